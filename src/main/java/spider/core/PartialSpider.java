@@ -8,10 +8,13 @@ import de.metanome.algorithm_integration.input.RelationalInput;
 import de.metanome.algorithm_integration.input.RelationalInputGenerator;
 import de.metanome.algorithm_integration.result_receiver.RelaxedInclusionDependencyResultReceiver;
 import de.metanome.backend.input.file.DefaultFileInputGenerator;
+import spider.io.GzipInputChannel;
+import spider.io.TempStorage;
 import spider.utils.CollectionUtils;
 import spider.utils.DuplicateHandling;
 import spider.utils.FileUtils;
 import spider.utils.NullHandling;
+import spider.utils.RowSampling;
 
 import java.io.File;
 import java.io.IOException;
@@ -52,6 +55,146 @@ public class PartialSpider extends PartialSpiderAlgorithm implements RelaxedIncl
         dupH.setRequired(true);
         configs.add(dupH);
 
+        ConfigurationRequirementString deduplicate = new ConfigurationRequirementString(
+                Identifier.DEDUPLICATE_ON_INGESTION.name());
+        deduplicate.setDefaultValues(new String[]{String.valueOf(this.deduplicateOnIngestion)});
+        deduplicate.setRequired(false);
+        configs.add(deduplicate);
+
+        ConfigurationRequirementString splitSize = new ConfigurationRequirementString(
+                Identifier.INPUT_SPLIT_SIZE.name());
+        splitSize.setDefaultValues(new String[]{String.valueOf(this.inputSplitSize)});
+        splitSize.setRequired(false);
+        configs.add(splitSize);
+
+        ConfigurationRequirementString nativeInput = new ConfigurationRequirementString(
+                Identifier.NATIVE_INPUT.name());
+        nativeInput.setDefaultValues(new String[]{String.valueOf(this.nativeInput)});
+        nativeInput.setRequired(false);
+        configs.add(nativeInput);
+
+        ConfigurationRequirementString blockSize = new ConfigurationRequirementString(
+                Identifier.PIPELINE_BLOCK_SIZE.name());
+        blockSize.setDefaultValues(new String[]{String.valueOf(this.pipelineBlockSize)});
+        blockSize.setRequired(false);
+        configs.add(blockSize);
+
+        ConfigurationRequirementString queueDepth = new ConfigurationRequirementString(
+                Identifier.PIPELINE_QUEUE_DEPTH.name());
+        queueDepth.setDefaultValues(new String[]{String.valueOf(this.pipelineQueueDepth)});
+        queueDepth.setRequired(false);
+        configs.add(queueDepth);
+
+        ConfigurationRequirementString memoryPercentage = new ConfigurationRequirementString(
+                Identifier.MAX_MEMORY_USAGE_PERCENTAGE.name());
+        memoryPercentage.setDefaultValues(new String[]{String.valueOf(this.maxMemoryUsagePercentage)});
+        memoryPercentage.setRequired(false);
+        configs.add(memoryPercentage);
+
+        ConfigurationRequirementString memoryCheck = new ConfigurationRequirementString(
+                Identifier.MEMORY_CHECK_FREQUENCY.name());
+        memoryCheck.setDefaultValues(new String[]{String.valueOf(this.memoryCheckFrequency)});
+        memoryCheck.setRequired(false);
+        configs.add(memoryCheck);
+
+        ConfigurationRequirementString offHeap = new ConfigurationRequirementString(
+                Identifier.OFF_HEAP_DEDUP.name());
+        offHeap.setDefaultValues(new String[]{String.valueOf(this.offHeapDedup)});
+        offHeap.setRequired(false);
+        configs.add(offHeap);
+
+        ConfigurationRequirementString asyncSpill = new ConfigurationRequirementString(
+                Identifier.ASYNC_SPILL.name());
+        asyncSpill.setDefaultValues(new String[]{String.valueOf(this.asyncSpill)});
+        asyncSpill.setRequired(false);
+        configs.add(asyncSpill);
+
+        ConfigurationRequirementString parallelSort = new ConfigurationRequirementString(
+                Identifier.PARALLEL_SORT_THRESHOLD.name());
+        parallelSort.setDefaultValues(new String[]{String.valueOf(this.parallelSortThreshold)});
+        parallelSort.setRequired(false);
+        configs.add(parallelSort);
+
+        ConfigurationRequirementString fanIn = new ConfigurationRequirementString(
+                Identifier.MAX_MERGE_FAN_IN.name());
+        fanIn.setDefaultValues(new String[]{String.valueOf(this.maxMergeFanIn)});
+        fanIn.setRequired(false);
+        configs.add(fanIn);
+
+        ConfigurationRequirementString frontCoding = new ConfigurationRequirementString(
+                Identifier.FRONT_CODING_RESTART_INTERVAL.name());
+        frontCoding.setDefaultValues(new String[]{String.valueOf(this.frontCodingRestartInterval)});
+        frontCoding.setRequired(false);
+        configs.add(frontCoding);
+
+        ConfigurationRequirementString lazyMerge = new ConfigurationRequirementString(
+                Identifier.MAX_LAZY_MERGE_RUNS.name());
+        lazyMerge.setDefaultValues(new String[]{String.valueOf(this.maxLazyMergeRuns)});
+        lazyMerge.setRequired(false);
+        configs.add(lazyMerge);
+
+        ConfigurationRequirementString blockIndex = new ConfigurationRequirementString(
+                Identifier.BLOCK_INDEX_INTERVAL.name());
+        blockIndex.setDefaultValues(new String[]{String.valueOf(this.blockIndexInterval)});
+        blockIndex.setRequired(false);
+        configs.add(blockIndex);
+
+        ConfigurationRequirementString memoryMapped = new ConfigurationRequirementString(
+                Identifier.MEMORY_MAPPED_VALIDATION.name());
+        memoryMapped.setDefaultValues(new String[]{String.valueOf(this.memoryMappedValidation)});
+        memoryMapped.setRequired(false);
+        configs.add(memoryMapped);
+
+        ConfigurationRequirementString coOccurrence = new ConfigurationRequirementString(
+                Identifier.CO_OCCURRENCE_VALIDATION.name());
+        coOccurrence.setDefaultValues(new String[]{String.valueOf(this.coOccurrenceValidation)});
+        coOccurrence.setRequired(false);
+        configs.add(coOccurrence);
+
+        ConfigurationRequirementString rowLimit = new ConfigurationRequirementString(
+                Identifier.INPUT_ROW_LIMIT.name());
+        rowLimit.setDefaultValues(new String[]{String.valueOf(this.inputRowLimit)});
+        rowLimit.setRequired(false);
+        configs.add(rowLimit);
+
+        ConfigurationRequirementString rowSampling = new ConfigurationRequirementString(
+                Identifier.ROW_SAMPLING.name());
+        rowSampling.setDefaultValues(new String[]{this.rowSampling.name()});
+        rowSampling.setRequired(false);
+        configs.add(rowSampling);
+
+        for (Identifier side : new Identifier[]{Identifier.DEPENDENT_INCLUDE, Identifier.DEPENDENT_EXCLUDE, Identifier.REFERENCED_INCLUDE, Identifier.REFERENCED_EXCLUDE}) {
+            ConfigurationRequirementString patterns = new ConfigurationRequirementString(
+                    side.name(), ConfigurationRequirement.ARBITRARY_NUMBER_OF_VALUES);
+            patterns.setDefaultValues(new String[0]);
+            patterns.setRequired(false);
+            configs.add(patterns);
+        }
+
+        ConfigurationRequirementString crossTable = new ConfigurationRequirementString(
+                Identifier.CROSS_TABLE_ONLY.name());
+        crossTable.setDefaultValues(new String[]{String.valueOf(this.crossTableOnly)});
+        crossTable.setRequired(false);
+        configs.add(crossTable);
+
+        ConfigurationRequirementString tempFolders = new ConfigurationRequirementString(
+                Identifier.TEMP_FOLDER_PATH.name(), ConfigurationRequirement.ARBITRARY_NUMBER_OF_VALUES);
+        tempFolders.setDefaultValues(new String[]{this.tempFolder});
+        tempFolders.setRequired(false);
+        configs.add(tempFolders);
+
+        ConfigurationRequirementString tempPlacement = new ConfigurationRequirementString(
+                Identifier.TEMP_PLACEMENT.name());
+        tempPlacement.setDefaultValues(new String[]{this.tempPlacement.name()});
+        tempPlacement.setRequired(false);
+        configs.add(tempPlacement);
+
+        ConfigurationRequirementString segments = new ConfigurationRequirementString(
+                Identifier.SEGMENT_COUNT.name());
+        segments.setDefaultValues(new String[]{String.valueOf(this.segmentCount)});
+        segments.setRequired(false);
+        configs.add(segments);
+
         return configs;
     }
 
@@ -62,6 +205,12 @@ public class PartialSpider extends PartialSpiderAlgorithm implements RelaxedIncl
 
             this.tableNames = new String[fileInputGenerator.length];
             for (int i = 0; i < fileInputGenerator.length; i++) {
+                File inputFile = fileInputGenerator[i].getInputFile();
+                if (inputFile != null && GzipInputChannel.isCompressed(inputFile)) {
+                    // the generator cannot read compressed files
+                    this.tableNames[i] = GzipInputChannel.stripSuffix(inputFile.getName());
+                    continue;
+                }
                 try (RelationalInput input = fileInputGenerator[i].generateNewCopy()){
                     this.tableNames[i] = input.relationName();
                 } catch (Exception e) {
@@ -82,6 +231,61 @@ public class PartialSpider extends PartialSpiderAlgorithm implements RelaxedIncl
         } else if (Identifier.DUPLICATE_HANDLING.name().equals(identifier)) {
             this.duplicateHandling = DuplicateHandling.valueOf(values[0]);
 
+        } else if (Identifier.DEDUPLICATE_ON_INGESTION.name().equals(identifier)) {
+            this.deduplicateOnIngestion = Boolean.parseBoolean(values[0]);
+        } else if (Identifier.INPUT_SPLIT_SIZE.name().equals(identifier)) {
+            this.inputSplitSize = Long.parseLong(values[0]);
+        } else if (Identifier.NATIVE_INPUT.name().equals(identifier)) {
+            this.nativeInput = Boolean.parseBoolean(values[0]);
+        } else if (Identifier.PIPELINE_BLOCK_SIZE.name().equals(identifier)) {
+            this.pipelineBlockSize = Integer.parseInt(values[0]);
+        } else if (Identifier.PIPELINE_QUEUE_DEPTH.name().equals(identifier)) {
+            this.pipelineQueueDepth = Integer.parseInt(values[0]);
+        } else if (Identifier.SEGMENT_COUNT.name().equals(identifier)) {
+            this.segmentCount = Integer.parseInt(values[0]);
+        } else if (Identifier.MAX_MEMORY_USAGE_PERCENTAGE.name().equals(identifier)) {
+            this.maxMemoryUsagePercentage = Integer.parseInt(values[0]);
+        } else if (Identifier.MEMORY_CHECK_FREQUENCY.name().equals(identifier)) {
+            this.memoryCheckFrequency = Integer.parseInt(values[0]);
+        } else if (Identifier.OFF_HEAP_DEDUP.name().equals(identifier)) {
+            this.offHeapDedup = Boolean.parseBoolean(values[0]);
+        } else if (Identifier.ASYNC_SPILL.name().equals(identifier)) {
+            this.asyncSpill = Boolean.parseBoolean(values[0]);
+        } else if (Identifier.PARALLEL_SORT_THRESHOLD.name().equals(identifier)) {
+            this.parallelSortThreshold = Long.parseLong(values[0]);
+        } else if (Identifier.MAX_MERGE_FAN_IN.name().equals(identifier)) {
+            this.maxMergeFanIn = Integer.parseInt(values[0]);
+        } else if (Identifier.FRONT_CODING_RESTART_INTERVAL.name().equals(identifier)) {
+            this.frontCodingRestartInterval = Integer.parseInt(values[0]);
+        } else if (Identifier.MAX_LAZY_MERGE_RUNS.name().equals(identifier)) {
+            this.maxLazyMergeRuns = Integer.parseInt(values[0]);
+        } else if (Identifier.CO_OCCURRENCE_VALIDATION.name().equals(identifier)) {
+            this.coOccurrenceValidation = Boolean.parseBoolean(values[0]);
+        } else if (Identifier.BLOCK_INDEX_INTERVAL.name().equals(identifier)) {
+            this.blockIndexInterval = Integer.parseInt(values[0]);
+        } else if (Identifier.MEMORY_MAPPED_VALIDATION.name().equals(identifier)) {
+            this.memoryMappedValidation = Boolean.parseBoolean(values[0]);
+        } else if (Identifier.INPUT_ROW_LIMIT.name().equals(identifier)) {
+            this.inputRowLimit = Long.parseLong(values[0]);
+        } else if (Identifier.ROW_SAMPLING.name().equals(identifier)) {
+            this.rowSampling = RowSampling.valueOf(values[0]);
+        } else if (Identifier.DEPENDENT_INCLUDE.name().equals(identifier)) {
+            this.dependentIncludes = values;
+        } else if (Identifier.DEPENDENT_EXCLUDE.name().equals(identifier)) {
+            this.dependentExcludes = values;
+        } else if (Identifier.REFERENCED_INCLUDE.name().equals(identifier)) {
+            this.referencedIncludes = values;
+        } else if (Identifier.REFERENCED_EXCLUDE.name().equals(identifier)) {
+            this.referencedExcludes = values;
+        } else if (Identifier.CROSS_TABLE_ONLY.name().equals(identifier)) {
+            this.crossTableOnly = Boolean.parseBoolean(values[0]);
+        } else if (Identifier.TEMP_FOLDER_PATH.name().equals(identifier)) {
+            for (String value : values) {
+                isIllegalArgument(new String[]{value});
+            }
+            this.tempFolders = values;
+        } else if (Identifier.TEMP_PLACEMENT.name().equals(identifier)) {
+            this.tempPlacement = TempStorage.Placement.valueOf(values[0]);
         } else
             this.handleUnknownConfiguration(identifier, CollectionUtils.concat(values, ","));
     }
@@ -112,6 +316,6 @@ public class PartialSpider extends PartialSpiderAlgorithm implements RelaxedIncl
     }
 
     public enum Identifier {
-        INPUT_FILES, INPUT_ROW_LIMIT, TEMP_FOLDER_PATH, CLEAN_TEMP, FILTER_KEY_FOREIGN_KEYS, NUM_BUCKETS_PER_COLUMN, MEMORY_CHECK_FREQUENCY, MAX_MEMORY_USAGE_PERCENTAGE, THRESHOLD, NULL_HANDLING, DUPLICATE_HANDLING
+        INPUT_FILES, INPUT_ROW_LIMIT, TEMP_FOLDER_PATH, CLEAN_TEMP, FILTER_KEY_FOREIGN_KEYS, NUM_BUCKETS_PER_COLUMN, MEMORY_CHECK_FREQUENCY, MAX_MEMORY_USAGE_PERCENTAGE, THRESHOLD, NULL_HANDLING, DUPLICATE_HANDLING, DEDUPLICATE_ON_INGESTION, INPUT_SPLIT_SIZE, NATIVE_INPUT, PIPELINE_BLOCK_SIZE, PIPELINE_QUEUE_DEPTH, SEGMENT_COUNT, TEMP_PLACEMENT, ROW_SAMPLING, DEPENDENT_INCLUDE, DEPENDENT_EXCLUDE, REFERENCED_INCLUDE, REFERENCED_EXCLUDE, CROSS_TABLE_ONLY, OFF_HEAP_DEDUP, ASYNC_SPILL, PARALLEL_SORT_THRESHOLD, MAX_MERGE_FAN_IN, FRONT_CODING_RESTART_INTERVAL, MAX_LAZY_MERGE_RUNS, CO_OCCURRENCE_VALIDATION, BLOCK_INDEX_INTERVAL, MEMORY_MAPPED_VALIDATION
     }
 }
@@ -3,32 +3,49 @@ package spider.core;
 import de.metanome.algorithm_integration.AlgorithmExecutionException;
 import de.metanome.algorithm_integration.ColumnIdentifier;
 import de.metanome.algorithm_integration.ColumnPermutation;
+import de.metanome.algorithm_integration.configuration.ConfigurationSettingFileInput;
 import de.metanome.algorithm_integration.input.InputGenerationException;
 import de.metanome.algorithm_integration.result_receiver.ColumnNameMismatchException;
 import de.metanome.algorithm_integration.result_receiver.CouldNotReceiveResultException;
 import de.metanome.algorithm_integration.result_receiver.RelaxedInclusionDependencyResultReceiver;
 import de.metanome.algorithm_integration.results.RelaxedInclusionDependency;
 import de.metanome.backend.input.file.DefaultFileInputGenerator;
+import spider.io.ByteCsvReader;
+import spider.io.ColumnWriter;
+import spider.io.FileRange;
+import spider.io.Merger;
+import spider.io.MultiMergeRunner;
+import spider.io.GzipInputChannel;
+import spider.io.RangeRelationalInput;
 import spider.io.RelationalInputWrapper;
 import spider.io.RepositoryRunner;
+import spider.io.RowBlock;
+import spider.io.SegmentStore;
+import spider.io.SortScheduler;
+import spider.io.TempStorage;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import spider.structures.Attribute;
-import spider.structures.MultiwayMergeSort;
+import spider.structures.AttributeTournament;
+import spider.structures.CandidateStore;
+import spider.structures.MemoryBudget;
+import spider.utils.CandidateScope;
 import spider.utils.DuplicateHandling;
 import spider.utils.NullHandling;
+import spider.utils.RowSampling;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.management.ManagementFactory;
-import java.lang.management.MemoryUsage;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class PartialSpiderAlgorithm {
 
@@ -39,16 +56,70 @@ public class PartialSpiderAlgorithm {
     public String executionName = "pSPIDER";
     public String resultFolder = "F:\\statistics";
     public String tempFolder = "F:\\temp";
+    // if set, the temporary files are striped over these folders instead of the temp folder, e.g. to use several disks
+    public String[] tempFolders = null;
+    public TempStorage.Placement tempPlacement = TempStorage.Placement.ROUND_ROBIN;
 
     public int numThreads = Runtime.getRuntime().availableProcessors();
 
     public DuplicateHandling duplicateHandling = DuplicateHandling.AWARE;
     public NullHandling nullHandling = NullHandling.SUBSET;
 
-    public int maxMemory = 3_000_000;
+    // the sorts keep the heap below this percentage and check for memory pressure every this many inserted values
+    public int maxMemoryUsagePercentage = 60;
+    public int memoryCheckFrequency = 1000;
+    // count the values of the sorts in off-heap hash tables instead of HashMaps of Strings
+    public boolean offHeapDedup = false;
+    // write spill files of the sort phase in the background while counting continues into a second buffer
+    public boolean asyncSpill = false;
+    // front code the sorted attribute and spill files with a restart point every this many values, 0 disables it
+    public int frontCodingRestartInterval = 0;
+    // attributes that spill into at most this many runs are merged while they are validated instead of into a file,
+    // 0 disables it; every lazy run holds an open file during validation, segments disable it and so do duplicate
+    // handlings that count violations in distinct values, since only a merge knows their number
+    public int maxLazyMergeRuns = 0;
+    // write a block index of every this many values next to the sorted attribute files, 0 disables it
+    public int blockIndexInterval = 0;
+    // map the sorted attribute files into memory during validation instead of reading them through heap buffers
+    public boolean memoryMappedValidation = false;
+    // the maximum number of spill files merged at once, more files are merged in several passes
+    public int maxMergeFanIn = Merger.DEFAULT_MAX_FAN_IN;
+    // count the values shared within a group per candidate instead of charging every candidate outside of the group
+    public boolean coOccurrenceValidation = false;
+    // attributes with more values than this are sorted by all threads in value ranges, 0 disables the parallel sort
+    public long parallelSortThreshold = 0L;
+    public boolean deduplicateOnIngestion = false;
+    // tables larger than this number of bytes are split into ranges that are ingested in parallel, 0 disables splitting
+    public long inputSplitSize = 0L;
+    // tokenize the input files on byte level instead of reading them through the input generators
+    public boolean nativeInput = false;
+    // number of rows per block handed from the parsing to the writing threads and number of blocks queued per writer,
+    // blocks of wide tables or long values hold fewer rows, since a block is limited to a few MB
+    public int pipelineBlockSize = 4096;
+    public int pipelineQueueDepth = 4;
+    // number of segment files the sorted attributes are packed into, 0 stores every attribute in its own file
+    public int segmentCount = 0;
+    // reads at most this number of rows per table for a fast preview, 0 reads all rows
+    public long inputRowLimit = 0L;
+    public RowSampling rowSampling = RowSampling.FIRST;
+    // glob patterns on table.column that restrict the dependent and referenced attributes, null matches all attributes
+    public String[] dependentIncludes = null;
+    public String[] dependentExcludes = null;
+    public String[] referencedIncludes = null;
+    public String[] referencedExcludes = null;
+    // only consider candidates between attributes of different tables
+    public boolean crossTableOnly = false;
 
     private Attribute[] attributeIndex;
-    private PriorityQueue<Attribute> priorityQueue;
+    private CandidateStore candidates;
+    private CandidateScope candidateScope;
+    // whether an attribute may be the dependent or the referenced side of a candidate
+    private boolean[] dependentSide;
+    private boolean[] referencedSide;
+    // the attributes with values that take part in the validation
+    private List<Attribute> openAttributes;
+    private SegmentStore segmentStore;
+    private MemoryBudget memoryBudget;
 
     RelaxedInclusionDependencyResultReceiver resultReceiver;
 
@@ -87,12 +158,89 @@ public class PartialSpiderAlgorithm {
         List<RelationalInputWrapper> inputs = new ArrayList<>();
         int totalColumns = 0;
         for (int i = 0; i < fileInputGenerator.length; i++) {
-            inputs.add(new RelationalInputWrapper(totalColumns, tableNames[i], fileInputGenerator[i].generateNewCopy()));
-            totalColumns += inputs.get(i).numberOfColumns();
+            File inputFile = fileInputGenerator[i].getInputFile();
+            if (inputFile != null && GzipInputChannel.isCompressed(inputFile)) {
+                RelationalInputWrapper table = openCompressed(totalColumns, tableNames[i], fileInputGenerator[i]);
+                inputs.add(table);
+                totalColumns += table.numberOfColumns();
+                continue;
+            }
+            RelationalInputWrapper table = new RelationalInputWrapper(totalColumns, tableNames[i], fileInputGenerator[i].generateNewCopy());
+            inputs.addAll(prepareInput(table, fileInputGenerator[i]));
+            totalColumns += table.numberOfColumns();
         }
         return inputs;
     }
 
+    /**
+     * Reads a gzip compressed table through the byte level tokenizer while a separate thread decompresses it. Such
+     * tables are never split, since gzip streams can only be decompressed from the beginning.
+     */
+    private RelationalInputWrapper openCompressed(int tableOffset, String tableName, DefaultFileInputGenerator generator) throws InputGenerationException {
+        try {
+            GzipInputChannel channel = new GzipInputChannel(generator.getInputFile().toPath(), pipelineQueueDepth);
+            ByteCsvReader reader;
+            try {
+                reader = new ByteCsvReader(channel, Long.MAX_VALUE, generator.getSetting(), true, 0);
+            } catch (IOException | RuntimeException e) {
+                // the decompressor thread already runs and only stops once the channel is closed
+                channel.close();
+                throw e;
+            }
+            String[] headerLine = reader.getHeaderLine();
+            if (headerLine == null) {
+                headerLine = new String[reader.numberOfColumns()];
+                for (int i = 0; i < headerLine.length; i++) {
+                    headerLine[i] = "column" + (i + 1);
+                }
+            }
+            return new RelationalInputWrapper(tableOffset, tableName, headerLine, reader, 0);
+        } catch (IOException e) {
+            throw new InputGenerationException("Could not open " + generator.getInputFile(), e);
+        }
+    }
+
+    /**
+     * Splits large tables into ranges aligned to record boundaries, so that several threads can ingest them, and
+     * replaces the inputs by byte level readers if requested.
+     *
+     * @param table     the input of the whole table
+     * @param generator the generator that created the input
+     * @return the input of the whole table or one input for each range
+     */
+    private List<RelationalInputWrapper> prepareInput(RelationalInputWrapper table, DefaultFileInputGenerator generator) throws InputGenerationException {
+        if (generator.getInputFile() == null) {
+            return List.of(table);
+        }
+        Path path = generator.getInputFile().toPath();
+        try {
+            long fileSize = Files.size(path);
+            // limited tables are read by a single thread, so that the limit applies to the whole table
+            boolean split = inputSplitSize > 0L && inputRowLimit <= 0L && numThreads > 1 && fileSize > inputSplitSize;
+            if (!split && !nativeInput) {
+                return List.of(table);
+            }
+            int parts = split ? (int) Math.min(numThreads, (fileSize + inputSplitSize - 1) / inputSplitSize) : 1;
+            ConfigurationSettingFileInput setting = generator.getSetting();
+            List<FileRange> ranges = FileRange.split(path, parts, setting.getQuoteCharAsChar(), setting.getEscapeCharAsChar());
+            List<String> columnNames = List.of(table.headerLine);
+            List<RelationalInputWrapper> splitInputs = new ArrayList<>(ranges.size());
+            for (int part = 0; part < ranges.size(); part++) {
+                if (nativeInput) {
+                    ByteCsvReader reader = new ByteCsvReader(path, setting, ranges.get(part), table.numberOfColumns());
+                    splitInputs.add(new RelationalInputWrapper(table.tableOffset, table.relationName, table.headerLine, reader, part));
+                } else {
+                    RangeRelationalInput rangeInput = new RangeRelationalInput(path, setting, ranges.get(part), table.relationName, columnNames);
+                    splitInputs.add(new RelationalInputWrapper(table.tableOffset, table.relationName, rangeInput, part));
+                }
+            }
+            table.close();
+            return splitInputs;
+        } catch (Exception e) {
+            throw new InputGenerationException("Could not split " + path, e);
+        }
+    }
+
     /**
      * Fetches the number of attributes and prepares the index as well as the priority queue
      *
@@ -105,7 +253,21 @@ public class PartialSpiderAlgorithm {
         int numAttributes = getTotalColumnCount(tables);
         //logger.info("Found " + numAttributes + " attributes");
         attributeIndex = new Attribute[numAttributes];
-        priorityQueue = new PriorityQueue<>(numAttributes, this::compareAttributes);
+        candidates = new CandidateStore(numAttributes, coOccurrenceValidation);
+        openAttributes = new ArrayList<>(numAttributes);
+
+        candidateScope = new CandidateScope(dependentIncludes, dependentExcludes, referencedIncludes, referencedExcludes, crossTableOnly);
+        dependentSide = new boolean[numAttributes];
+        referencedSide = new boolean[numAttributes];
+        for (RelationalInputWrapper table : tables) {
+            if (table.part != 0) {
+                continue;
+            }
+            for (int i = 0; i < table.numberOfColumns(); i++) {
+                dependentSide[table.tableOffset + i] = candidateScope.isDependent(table.relationName, table.headerLine[i]);
+                referencedSide[table.tableOffset + i] = candidateScope.isReferenced(table.relationName, table.headerLine[i]);
+            }
+        }
 
         //logger.info("Finished Initializing Attributes. Took: " + (System.currentTimeMillis() - sTime) + "ms");
     }
@@ -119,58 +281,95 @@ public class PartialSpiderAlgorithm {
         //logger.info("Creating attribute files");
         long sTime = System.currentTimeMillis();
 
-        Queue<RelationalInputWrapper> inputQueue = new ArrayDeque<>(tables);
+        memoryBudget = new MemoryBudget(maxMemoryUsagePercentage, memoryCheckFrequency);
+        TempStorage tempStorage = tempFolders == null ? new TempStorage(tempFolder) : new TempStorage(tempFolders, tempPlacement);
+
+        // parsing and writing overlap: the repository runners parse rows into blocks, the column writers consume them
+        int numWriters = Math.max(1, numThreads / 2);
+        List<BlockingQueue<RowBlock>> writerQueues = new ArrayList<>(numWriters);
+        ColumnWriter[] columnWriters = new ColumnWriter[numWriters];
+        for (int i = 0; i < numWriters; i++) {
+            writerQueues.add(new ArrayBlockingQueue<>(pipelineQueueDepth));
+            columnWriters[i] = new ColumnWriter(writerQueues.get(i), i, numWriters);
+            columnWriters[i].start();
+        }
+
+        Queue<RelationalInputWrapper> inputQueue = new ConcurrentLinkedQueue<>(tables);
+        boolean[] activeAttributes = new boolean[attributeIndex.length];
+        for (int i = 0; i < activeAttributes.length; i++) {
+            activeAttributes[i] = dependentSide[i] || referencedSide[i];
+        }
         RepositoryRunner[] repositoryRunners = new RepositoryRunner[numThreads];
         for (int i = 0; i < numThreads; i++) {
-            repositoryRunners[i] = new RepositoryRunner(inputQueue, attributeIndex, tempFolder);
+            repositoryRunners[i] = new RepositoryRunner(inputQueue, attributeIndex, tempStorage, deduplicateOnIngestion, memoryBudget.getLimit() / numThreads, memoryBudget, offHeapDedup, writerQueues, pipelineBlockSize, inputRowLimit, rowSampling, activeAttributes, frontCodingRestartInterval, blockIndexInterval);
             repositoryRunners[i].start();
         }
         for (int i = 0; i < numThreads; i++) {
             repositoryRunners[i].join();
         }
+        for (int i = 0; i < numWriters; i++) {
+            writerQueues.get(i).put(RowBlock.END);
+        }
+        for (int i = 0; i < numWriters; i++) {
+            columnWriters[i].join();
+        }
+
+        if (segmentCount > 0) {
+            try {
+                segmentStore = new SegmentStore(tempStorage, segmentCount, attributeIndex.length);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            for (Attribute attribute : attributeIndex) {
+                attribute.setSegmentStore(segmentStore);
+            }
+        }
 
         //logger.info("Finished creating attribute Files. Took: " + (System.currentTimeMillis() - sTime) + "ms");
     }
 
     private void enqueueAttributes() throws IOException {
 
-        Queue<Attribute> attributeQueue = Arrays.stream(attributeIndex).sorted(Attribute::compareBySize).collect(Collectors.toCollection(ArrayDeque::new));
-        System.gc();
-        MemoryUsage memoryUsage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
-        long available = memoryUsage.getMax() - memoryUsage.getUsed();
-        // we estimate 400 Bytes per String including overhead
-        long threadStringLimit = available / (this.numThreads*400L);
-        this.maxMemory = (int) threadStringLimit;
-
-        attributeQueue.parallelStream().forEach(attribute -> {
-            int maxSize = (int) Math.min(attribute.getSize(), this.maxMemory);
-            MultiwayMergeSort multiwayMergeSort = new MultiwayMergeSort(maxMemory, attribute, maxSize);
-            try {
-                multiwayMergeSort.sort();
-            } catch (IOException e) {
-                e.printStackTrace();
+        // attributes outside of every candidate are neither sorted nor opened
+        List<Attribute> attributes = Arrays.stream(attributeIndex).filter(this::isActive).toList();
+        SortScheduler scheduler = new SortScheduler(attributes, memoryBudget.getLimit(), numThreads, parallelSortThreshold);
+        MultiMergeRunner[] sortRunners = new MultiMergeRunner[numThreads];
+        // lazy runs stay separate files, which would bypass the segments and their bound on open files, and the number
+        // of distinct values is only known once the runs are merged, which is too late unless violations count all values
+        int maxLazyRuns = segmentStore == null && duplicateHandling == DuplicateHandling.AWARE ? maxLazyMergeRuns : 0;
+        for (int i = 0; i < numThreads; i++) {
+            sortRunners[i] = new MultiMergeRunner(scheduler, memoryBudget, offHeapDedup, asyncSpill, maxMergeFanIn, maxLazyRuns, numThreads, threshold, duplicateHandling);
+            sortRunners[i].start();
+        }
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                sortRunners[i].join();
             }
-            attribute.calculateViolations(threshold, duplicateHandling);
-        });
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
 
         for (final Attribute attribute : attributeIndex) {
-            attribute.open();
-            if (attribute.getReadPointer().hasNext()) {
-                priorityQueue.add(attribute);
+            if (!isActive(attribute)) {
+                continue;
+            }
+            attribute.open(memoryMappedValidation);
+            if (attribute.getValueSource().hasNext()) {
+                openAttributes.add(attribute);
             } else {
                 // The attribute is null in every entry
                 // Equality will never get here, since null is considered a value
                 if (this.nullHandling == NullHandling.INEQUALITY) {
                     // Inequality: Every Null is different form every other null
                     // An attribute that only consists of null can not form any pIND regardless of the threshold.
-                    attribute.getDependent().clear();
-                    attribute.getReferenced().clear();
+                    candidates.clearDependent(attribute.getId());
+                    candidates.clearReferenced(attribute.getId());
                 } else {
                     // Subset: Attribute references everything
                     // Another Pure-Null attribute could still be a reference
 
                     // Foreign: Like Subset but referenced can not include null -> handled below
-                    attribute.getDependent().clear();
+                    candidates.clearDependent(attribute.getId());
                 }
             }
         }
@@ -181,84 +380,77 @@ public class PartialSpiderAlgorithm {
             for (Attribute attribute : attributeIndex) {
                 if (attribute.getNullCount() > 0L) {
                     for (Attribute depAttribute : attributeIndex) {
-                        depAttribute.removeReferenced(attribute.getId());
+                        candidates.removeReferenced(depAttribute.getId(), attribute.getId());
                     }
                 }
             }
         }
     }
 
-    private void initializePINDs() {
-        final IntSet allIds = allIds();
-        for (final Attribute attribute : attributeIndex) {
-            attribute.addDependent(allIds);
-            attribute.removeDependent(attribute.getId());
-            attribute.addReferenced(allIds);
-            attribute.removeReferenced(attribute.getId());
-        }
+    private boolean isActive(Attribute attribute) {
+        return dependentSide[attribute.getId()] || referencedSide[attribute.getId()];
     }
 
-    private IntSet allIds() {
-        final IntSet ids = new IntOpenHashSet(attributeIndex.length);
+    private void initializePINDs() {
+        final IntSet[] dependents = new IntSet[attributeIndex.length];
         for (int index = 0; index < attributeIndex.length; ++index) {
-            ids.add(index);
+            dependents[index] = new IntOpenHashSet();
         }
-        return ids;
-    }
-
-    private int getTotalColumnCount(final List<RelationalInputWrapper> tables) {
-        return tables.stream().mapToInt(RelationalInputWrapper::numberOfColumns).sum();
-    }
-
-    private int compareAttributes(final Attribute a1, final Attribute a2) {
-        if (a1.getCurrentValue() == null && a2.getCurrentValue() == null) {
-            return 0;
-        }
-
-        if (a1.getCurrentValue() == null) {
-            return 1;
+        for (final Attribute dep : attributeIndex) {
+            if (!dependentSide[dep.getId()]) {
+                continue;
+            }
+            final IntSet referenced = new IntOpenHashSet();
+            for (final Attribute ref : attributeIndex) {
+                if (ref != dep && referencedSide[ref.getId()] && candidateScope.isCandidate(dep.getTableName(), ref.getTableName())) {
+                    referenced.add(ref.getId());
+                    dependents[ref.getId()].add(dep.getId());
+                }
+            }
+            candidates.addReferenced(dep.getId(), referenced, dep.getViolationsLeft());
         }
-
-        if (a2.getCurrentValue() == null) {
-            return -1;
+        for (final Attribute attribute : attributeIndex) {
+            candidates.addDependent(attribute.getId(), dependents[attribute.getId()]);
         }
+    }
 
-        return a1.getCurrentValue().compareTo(a2.getCurrentValue());
+    private int getTotalColumnCount(final List<RelationalInputWrapper> tables) {
+        // split tables contribute their columns only once
+        return tables.stream().filter(table -> table.part == 0).mapToInt(RelationalInputWrapper::numberOfColumns).sum();
     }
 
     private void calculateInclusionDependencies() {
         long sTime = System.currentTimeMillis();
         //logger.info("Start pIND calculation");
 
-        Map<Integer, Long> topAttributes = new HashMap<>();
-        while (!priorityQueue.isEmpty()) {
+        AttributeTournament tournament = new AttributeTournament(openAttributes);
+        IntArrayList group = new IntArrayList();
+        IntSet topAttributes = new IntOpenHashSet();
+        while (!tournament.isEmpty()) {
 
-            final Attribute firstAttribute = priorityQueue.poll();
-            topAttributes.put(firstAttribute.getId(), firstAttribute.getCurrentOccurrences());
-            while (!priorityQueue.isEmpty() && priorityQueue.peek().equals(firstAttribute)) {
-                Attribute sameGroupAttribute = priorityQueue.poll();
-                topAttributes.put(sameGroupAttribute.getId(), sameGroupAttribute.getCurrentOccurrences());
+            tournament.collectMinimum(group);
+            for (int leaf : group) {
+                topAttributes.add(tournament.get(leaf).getId());
             }
 
-            for (int topAttribute : topAttributes.keySet()) {
-                attributeIndex[topAttribute].intersectReferenced(topAttributes.keySet(), attributeIndex, duplicateHandling);
+            for (int topAttribute : topAttributes) {
+                long violations = duplicateHandling == DuplicateHandling.UNAWARE ? attributeIndex[topAttribute].getCurrentOccurrences() : 1L;
+                candidates.intersectReferenced(topAttribute, topAttributes, violations);
             }
 
-            if (topAttributes.size() == 1 && !priorityQueue.isEmpty()) {
-                String nextVal = priorityQueue.peek().getCurrentValue();
-                while (firstAttribute.nextValue() && !firstAttribute.isFinished()) {
-                    if (firstAttribute.getCurrentValue().compareTo(nextVal) >= 0) {
-                        priorityQueue.add(firstAttribute);
-                        break;
-                    }
-                }
+            if (group.size() == 1 && tournament.size() > 1) {
+                int leaf = group.getInt(0);
+                Attribute firstAttribute = tournament.get(leaf);
+                Attribute nextAttribute = tournament.minimumExcept(leaf);
+                // the values in front of the next attribute's value are skipped without being charged
+                boolean keep = firstAttribute.nextValue() && !candidates.isFinished(firstAttribute.getId())
+                        && firstAttribute.seek(nextAttribute);
+                tournament.update(leaf, keep);
             } else {
 
-                for (int topAttribute : topAttributes.keySet()) {
-                    final Attribute attribute = attributeIndex[topAttribute];
-                    if (attribute.nextValue() && !attribute.isFinished()) {
-                        priorityQueue.add(attribute);
-                    }
+                for (int leaf : group) {
+                    final Attribute attribute = tournament.get(leaf);
+                    tournament.update(leaf, attribute.nextValue() && !candidates.isFinished(attribute.getId()));
                 }
             }
 
@@ -275,11 +467,11 @@ public class PartialSpiderAlgorithm {
 
         for (final Attribute dep : attributeIndex) {
 
-            if (dep.getReferenced().isEmpty()) {
+            if (!candidates.hasReferenced(dep.getId())) {
                 continue;
             }
 
-            for (final int refId : dep.getReferenced().keySet()) {
+            for (int refId = candidates.nextReferenced(dep.getId(), 0); refId >= 0; refId = candidates.nextReferenced(dep.getId(), refId + 1)) {
                 numUnary++;
                 final Attribute ref = attributeIndex[refId];
 
@@ -321,14 +513,14 @@ public class PartialSpiderAlgorithm {
 
     private void output() {
         for (final Attribute dep : attributeIndex) {
-            if (dep.getReferenced().isEmpty()) {
+            if (!candidates.hasReferenced(dep.getId())) {
                 continue;
             }
-            for (final int refId : dep.getReferenced().keySet()) {
+            for (int refId = candidates.nextReferenced(dep.getId(), 0); refId >= 0; refId = candidates.nextReferenced(dep.getId(), refId + 1)) {
                 final Attribute ref = attributeIndex[refId];
 
                 if (resultReceiver != null) {
-                    double measure = dep.getReferenced().get(refId);
+                    double measure = candidates.getViolationsLeft(dep.getId(), refId);
                     try {
                         this.resultReceiver.receiveResult(
                                 new RelaxedInclusionDependency(
@@ -351,6 +543,12 @@ public class PartialSpiderAlgorithm {
         for (final Attribute attribute : attributeIndex) {
             attribute.close();
         }
+        if (segmentStore != null) {
+            segmentStore.close();
+        }
+        if (memoryBudget != null) {
+            memoryBudget.close();
+        }
 
     }
 }
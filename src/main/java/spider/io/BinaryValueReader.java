@@ -0,0 +1,204 @@
+package spider.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads attribute values written by a {@link BinaryValueWriter}.
+ */
+public class BinaryValueReader implements ValueReader {
+
+    static final int BUFFER_SIZE = 1 << 13;
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final long start;
+    private long filePosition;
+    private final long end;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private int valueStart;
+    // whether the bytes of the last value have to survive a refill, because its occurrences are read next
+    private boolean keepValue = false;
+    // -1 until the header is read, otherwise the restart interval of front coded values or 0
+    private int restartInterval = -1;
+    // the decoded front coded value
+    private byte[] value;
+
+    public BinaryValueReader(Path path) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), 0L, Long.MAX_VALUE, true);
+    }
+
+    /**
+     * Reads the region [start, start + length) of a channel using positional reads, so that several readers can share
+     * the same channel.
+     *
+     * @param ownsChannel whether closing the reader closes the channel
+     */
+    public BinaryValueReader(FileChannel channel, long start, long length, boolean ownsChannel) {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.start = start;
+        this.filePosition = start;
+        this.end = length == Long.MAX_VALUE ? Long.MAX_VALUE : start + length;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Reads the next value.
+     *
+     * @return the value or null if the end of the file is reached
+     */
+    public String readValue() throws IOException {
+        int length = readValueBytes();
+        if (length < 0) {
+            return null;
+        }
+        return new String(getBuffer(), getValueStart(), length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next value without decoding it. Its bytes start at {@link #getValueStart()} in {@link #getBuffer()} and
+     * stay valid until the next value is read, also while its occurrences are read.
+     *
+     * @return the length of the value or -1 if the end of the file is reached
+     */
+    public int readValueBytes() throws IOException {
+        keepValue = false;
+        if (restartInterval < 0 && !readHeader()) {
+            return -1;
+        }
+        if (!ensure(1)) {
+            return -1;
+        }
+        if (restartInterval > 0) {
+            return readFrontCoded();
+        }
+        int length = (int) readVarLong();
+        if (!ensure(length)) {
+            throw new EOFException("Truncated value");
+        }
+        valueStart = position;
+        position += length;
+        keepValue = true;
+        return length;
+    }
+
+    private boolean readHeader() throws IOException {
+        if (!ensure(1)) {
+            return false;
+        }
+        restartInterval = (int) readVarLong();
+        value = restartInterval > 0 ? new byte[64] : null;
+        return true;
+    }
+
+    /**
+     * Moves to an entry, so that the next value read is the one at the offset. The offset is relative to the start of
+     * the region and has to point to the start of an entry, in front coded files to a restart point.
+     */
+    public void seek(long offset) throws IOException {
+        if (restartInterval < 0) {
+            readHeader();
+        }
+        filePosition = start + offset;
+        position = 0;
+        limit = 0;
+        valueStart = 0;
+        keepValue = false;
+    }
+
+    private int readFrontCoded() throws IOException {
+        int shared = (int) readVarLong();
+        int suffix = (int) readVarLong();
+        if (!ensure(suffix)) {
+            throw new EOFException("Truncated value");
+        }
+        if (value.length < shared + suffix) {
+            value = Arrays.copyOf(value, Math.max(shared + suffix, value.length * 2));
+        }
+        System.arraycopy(buffer, position, value, shared, suffix);
+        position += suffix;
+        return shared + suffix;
+    }
+
+    public byte[] getBuffer() {
+        return restartInterval > 0 ? value : buffer;
+    }
+
+    public int getValueStart() {
+        return restartInterval > 0 ? 0 : valueStart;
+    }
+
+    /**
+     * Reads the number of occurrences stored after a value in sorted files.
+     */
+    public long readOccurrences() throws IOException {
+        return readVarLong();
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0L;
+        int shift = 0;
+        byte current;
+        do {
+            if (!ensure(1)) {
+                throw new EOFException("Truncated varint");
+            }
+            current = buffer[position++];
+            value |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+
+    /**
+     * Makes sure that at least the given number of bytes is available in the buffer.
+     *
+     * @return false if the file ends before
+     */
+    private boolean ensure(int bytes) throws IOException {
+        if (limit - position >= bytes) {
+            return true;
+        }
+        int keep = keepValue ? valueStart : position;
+        int remaining = limit - keep;
+        int needed = position - keep + bytes;
+        if (needed > buffer.length) {
+            byte[] larger = new byte[Math.max(needed, buffer.length * 2)];
+            System.arraycopy(buffer, keep, larger, 0, remaining);
+            buffer = larger;
+        } else {
+            System.arraycopy(buffer, keep, buffer, 0, remaining);
+        }
+        position -= keep;
+        valueStart -= keep;
+        limit = remaining;
+        while (limit - position < bytes) {
+            int toRead = (int) Math.min(buffer.length - limit, end - filePosition);
+            int read = toRead == 0 ? -1 : channel.read(ByteBuffer.wrap(buffer, limit, toRead), filePosition);
+            if (read < 0) {
+                return false;
+            }
+            filePosition += read;
+            limit += read;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+}
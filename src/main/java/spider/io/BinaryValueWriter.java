@@ -0,0 +1,211 @@
+package spider.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes attribute values in the binary on-disk format. Every value is stored as its UTF-8 length (varint) followed by
+ * the UTF-8 bytes. Sorted attribute and spill files additionally store the number of occurrences as varint directly
+ * after each value. Since values are length-prefixed, they may contain any character including line breaks.
+ * <p>
+ * Sorted files may be front coded: a value then stores the length of the prefix it shares with the previous value
+ * (varint) and only the remaining suffix. Every n-th value is a restart point that is stored in full. Each file starts
+ * with a header varint holding n, 0 for files that are not front coded.
+ * <p>
+ * Sorted attribute files may be accompanied by a {@link BlockIndex} of every k-th value, which is written when the
+ * writer is closed.
+ */
+public class BinaryValueWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream output;
+    private final byte[] buffer;
+    private int position;
+    private long bytesWritten;
+
+    private final int restartInterval;
+    private byte[] previous;
+    private int previousLength;
+    // number of values since the last restart point, 0 if the next value is one
+    private int sinceRestart = 0;
+
+    private final int indexInterval;
+    private final BlockIndex index;
+    private final Path indexPath;
+    // number of values since the last indexed one
+    private int sinceIndexed;
+
+    // while shared by several sorts that write one after another, closing only flushes
+    private boolean keepOpen = false;
+
+    public BinaryValueWriter(Path path) throws IOException {
+        this(path, 0);
+    }
+
+    /**
+     * @param restartInterval the number of values between two restart points if the values are front coded, 0 if
+     *                        they are written in full
+     */
+    public BinaryValueWriter(Path path, int restartInterval) throws IOException {
+        this(path, restartInterval, 0);
+    }
+
+    /**
+     * @param indexInterval the number of values between two entries of the block index written next to the file, 0
+     *                      writes no index
+     */
+    public BinaryValueWriter(Path path, int restartInterval, int indexInterval) throws IOException {
+        this(Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), restartInterval, indexInterval, path);
+    }
+
+    public BinaryValueWriter(OutputStream output) {
+        this(output, 0);
+    }
+
+    public BinaryValueWriter(OutputStream output, int restartInterval) {
+        this(output, restartInterval, 0, null);
+    }
+
+    private BinaryValueWriter(OutputStream output, int restartInterval, int indexInterval, Path path) {
+        this.output = output;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.position = 0;
+        this.bytesWritten = 0L;
+        this.restartInterval = Math.max(0, restartInterval);
+        this.previous = this.restartInterval > 0 ? new byte[64] : null;
+        this.indexInterval = indexInterval;
+        this.index = indexInterval > 0 ? new BlockIndex() : null;
+        this.indexPath = indexInterval > 0 ? BlockIndex.pathOf(path) : null;
+        this.sinceIndexed = indexInterval;
+        putVarLong(this.restartInterval);
+    }
+
+    /**
+     * Writes a single raw value without occurrence count, as done for unsorted attribute files.
+     *
+     * @param value the value to write
+     */
+    public void writeValue(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeValue(bytes, 0, bytes.length);
+    }
+
+    public void writeValue(byte[] bytes, int offset, int length) throws IOException {
+        if (index != null) {
+            // front coded values can only be decoded from a restart point on
+            if (sinceIndexed >= indexInterval && sinceRestart == 0) {
+                index.add(bytes, offset, length, getBytesWritten());
+                sinceIndexed = 0;
+            }
+            sinceIndexed++;
+        }
+        if (restartInterval == 0) {
+            writeVarLong(length);
+            writeBytes(bytes, offset, length);
+            return;
+        }
+        int shared = 0;
+        if (sinceRestart > 0) {
+            int mismatch = Arrays.mismatch(previous, 0, previousLength, bytes, offset, offset + length);
+            shared = mismatch < 0 ? length : mismatch;
+        }
+        writeVarLong(shared);
+        writeVarLong(length - shared);
+        writeBytes(bytes, offset + shared, length - shared);
+
+        if (previous.length < length) {
+            previous = Arrays.copyOf(previous, Math.max(length, previous.length * 2));
+        }
+        System.arraycopy(bytes, offset + shared, previous, shared, length - shared);
+        previousLength = length;
+        if (++sinceRestart == restartInterval) {
+            sinceRestart = 0;
+        }
+    }
+
+    /**
+     * Writes a value together with its number of occurrences, as done for sorted attribute and spill files.
+     *
+     * @param value       the value to write
+     * @param occurrences the number of occurrences of the value
+     */
+    public void writeEntry(String value, long occurrences) throws IOException {
+        writeValue(value);
+        writeVarLong(occurrences);
+    }
+
+    public void writeEntry(byte[] bytes, int offset, int length, long occurrences) throws IOException {
+        writeValue(bytes, offset, length);
+        writeVarLong(occurrences);
+    }
+
+    public void writeVarLong(long value) throws IOException {
+        if (buffer.length - position < 10) {
+            flushBuffer();
+        }
+        putVarLong(value);
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0L) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length > buffer.length) {
+                output.write(bytes, offset, length);
+                bytesWritten += length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            bytesWritten += position;
+            position = 0;
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far, including buffered bytes
+     */
+    public long getBytesWritten() {
+        return bytesWritten + position;
+    }
+
+    /**
+     * Lets several sorts write their sorted value ranges one after another, each of them closing the writer when it
+     * is done. The values continue the front coding and the index of the ones before, as if a single sort wrote them.
+     */
+    public void setKeepOpen(boolean keepOpen) {
+        this.keepOpen = keepOpen;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        if (keepOpen) {
+            return;
+        }
+        output.close();
+        if (index != null) {
+            index.write(indexPath);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package spider.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A sparse index over a sorted attribute file. It holds every k-th value together with the file offset its entry
+ * starts at, so that a reader can jump close to a value instead of reading all entries before it. Indexed entries of
+ * front coded files are restart points, so decoding can start there. The index is stored next to the file it belongs
+ * to as a count followed by the offset, length and bytes of every indexed value.
+ */
+public class BlockIndex {
+
+    private byte[][] values = new byte[16][];
+    private long[] offsets = new long[16];
+    private int size = 0;
+
+    public static Path pathOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".index");
+    }
+
+    public void add(byte[] bytes, int offset, int length, long fileOffset) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        values[size] = Arrays.copyOfRange(bytes, offset, offset + length);
+        offsets[size] = fileOffset;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] getValue(int entry) {
+        return values[entry];
+    }
+
+    public long getOffset(int entry) {
+        return offsets[entry];
+    }
+
+    /**
+     * Gallops from the given entry towards the target, which is cheap for the short forward jumps of a validation that
+     * seeks through the file in ascending order.
+     *
+     * @param from the first entry to consider
+     * @return the last entry from on whose value is at most the target, from - 1 if there is none
+     */
+    public int floor(byte[] target, int start, int length, int from) {
+        if (from >= size || compare(from, target, start, length) > 0) {
+            return from - 1;
+        }
+        int low = from;
+        int step = 1;
+        while (low + step < size && compare(low + step, target, start, length) <= 0) {
+            low += step;
+            step <<= 1;
+        }
+        int high = Math.min(low + step, size);
+        // the entry at low is at most the target, the one at high is greater or does not exist
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, target, start, length) <= 0) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int entry, byte[] target, int start, int length) {
+        return Arrays.compareUnsigned(values[entry], 0, values[entry].length, target, start, start + length);
+    }
+
+    public void write(Path path) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            output.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                output.writeLong(offsets[i]);
+                output.writeInt(values[i].length);
+                output.write(values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the index stored at the path or null if the file has none
+     */
+    public static BlockIndex read(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            BlockIndex index = new BlockIndex();
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                long offset = input.readLong();
+                byte[] value = new byte[input.readInt()];
+                input.readFully(value);
+                index.add(value, 0, value.length, offset);
+            }
+            return index;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (EOFException e) {
+            throw new IOException("Truncated block index " + path, e);
+        }
+    }
+}
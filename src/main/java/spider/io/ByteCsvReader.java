@@ -0,0 +1,394 @@
+package spider.io;
+
+import de.metanome.algorithm_integration.configuration.ConfigurationSettingFileInput;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Tokenizes csv/tsv input directly on the bytes read from a channel. Fields are exposed as slices of an internal
+ * buffer, so no String is created per cell. A slice is only valid until the next call of {@link #nextRecord()}.
+ * <p>
+ * The reader follows the separator, quote, escape, strict quotes, leading white space, header, skip lines, differing
+ * lines and null value settings of the file input. Quoted fields may contain separators and line breaks, a doubled
+ * quote inside a quoted field is read as a single quote and the escape character takes the next character literally.
+ * As in opencsv, the escape character itself is dropped, also at the end of a line, where it does not escape the line
+ * break.
+ * Fields that need unescaping are copied into a second buffer, all other fields point into the read buffer.
+ */
+public class ByteCsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int NEED_MORE = -1;
+    private static final int END = -2;
+
+    private final ReadableByteChannel channel;
+    private long remaining;
+    private boolean endOfInput = false;
+
+    private final byte separator;
+    private final byte quote;
+    private final byte escape;
+    private final boolean quoting;
+    private final boolean escaping;
+    private final boolean strictQuotes;
+    private final boolean ignoreLeadingWhiteSpace;
+    private final boolean skipDifferingLines;
+    private final byte[] nullValue;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private byte[] scratch = new byte[1 << 12];
+    private int scratchPosition;
+
+    private int numberOfColumns;
+    private String[] headerLine;
+    private boolean pendingRecord = false;
+
+    private int fieldCount;
+    private byte[][] fieldBuffers = new byte[16][];
+    private int[] fieldStarts = new int[16];
+    private int[] fieldLengths = new int[16];
+    private boolean[] fieldNulls = new boolean[16];
+
+    /**
+     * Reads the given range of a file.
+     *
+     * @param numberOfColumns the expected number of fields per record, or 0 to derive it from the first record
+     */
+    public ByteCsvReader(Path path, ConfigurationSettingFileInput setting, FileRange range, int numberOfColumns) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ).position(range.start), range.length(), setting, range.start == 0L, numberOfColumns);
+    }
+
+    /**
+     * @param channel         the channel to read from, it is closed together with the reader
+     * @param length          the number of bytes to read from the channel, Long.MAX_VALUE to read to its end
+     * @param atFileStart     true if the channel starts at the beginning of the file, so that skipped lines and the
+     *                        header are read from it
+     * @param numberOfColumns the expected number of fields per record, or 0 to derive it from the header or first record
+     */
+    public ByteCsvReader(ReadableByteChannel channel, long length, ConfigurationSettingFileInput setting, boolean atFileStart, int numberOfColumns) throws IOException {
+        this.channel = channel;
+        this.remaining = length;
+        this.separator = toByte(setting.getSeparatorAsChar());
+        this.quote = toByte(setting.getQuoteCharAsChar());
+        this.escape = toByte(setting.getEscapeCharAsChar());
+        this.quoting = quote != 0;
+        this.escaping = escape != 0 && escape != quote;
+        this.strictQuotes = setting.isStrictQuotes();
+        this.ignoreLeadingWhiteSpace = setting.isIgnoreLeadingWhiteSpace();
+        this.skipDifferingLines = setting.isSkipDifferingLines();
+        this.nullValue = setting.getNullValue() == null ? null : setting.getNullValue().getBytes(StandardCharsets.UTF_8);
+        this.numberOfColumns = numberOfColumns;
+
+        if (atFileStart) {
+            for (int i = 0; i < setting.getSkipLines(); i++) {
+                skipLine();
+            }
+            if (setting.hasHeader() && readRecord()) {
+                this.headerLine = new String[fieldCount];
+                for (int i = 0; i < fieldCount; i++) {
+                    headerLine[i] = getString(i);
+                }
+                if (this.numberOfColumns <= 0) {
+                    this.numberOfColumns = fieldCount;
+                }
+            }
+        }
+        if (this.numberOfColumns <= 0) {
+            // look ahead to the first record to find the number of columns
+            pendingRecord = readRecord();
+            this.numberOfColumns = pendingRecord ? fieldCount : 0;
+        }
+    }
+
+    private static byte toByte(char c) {
+        if (c > 0x7F) {
+            throw new IllegalArgumentException("Only ASCII characters are supported as separator, quote and escape: " + c);
+        }
+        return (byte) c;
+    }
+
+    /**
+     * @return the header of the file or null, if it has none or the reader does not start at the beginning of the file
+     */
+    public String[] getHeaderLine() {
+        return headerLine;
+    }
+
+    public int numberOfColumns() {
+        return numberOfColumns;
+    }
+
+    /**
+     * Moves to the next record, skipping or rejecting records with a differing number of fields.
+     *
+     * @return false if the input is exhausted
+     */
+    public boolean nextRecord() throws IOException {
+        if (pendingRecord) {
+            pendingRecord = false;
+            return true;
+        }
+        while (readRecord()) {
+            if (fieldCount == numberOfColumns) {
+                return true;
+            }
+            if (!skipDifferingLines) {
+                throw new IOException("Csv line length did not match: expected " + numberOfColumns + " fields but found " + fieldCount);
+            }
+        }
+        return false;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public boolean isNull(int field) {
+        return fieldNulls[field];
+    }
+
+    public byte[] getBuffer(int field) {
+        return fieldBuffers[field];
+    }
+
+    public int getStart(int field) {
+        return fieldStarts[field];
+    }
+
+    public int getLength(int field) {
+        return fieldLengths[field];
+    }
+
+    /**
+     * Decodes a field. Meant for headers and callers that need Strings, the ingestion works on the slices.
+     */
+    public String getString(int field) {
+        return fieldNulls[field] ? null : new String(fieldBuffers[field], fieldStarts[field], fieldLengths[field], StandardCharsets.UTF_8);
+    }
+
+    private boolean readRecord() throws IOException {
+        while (true) {
+            int end = parseRecord();
+            if (end == END) {
+                return false;
+            }
+            if (end != NEED_MORE) {
+                position = end;
+                return true;
+            }
+            fill();
+        }
+    }
+
+    private void skipLine() throws IOException {
+        while (true) {
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    position = i + 1;
+                    return;
+                }
+            }
+            if (endOfInput) {
+                position = limit;
+                return;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads more input. The buffer grows if a single record
+     * does not fit into it.
+     */
+    private void fill() throws IOException {
+        int unread = limit - position;
+        if (unread == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        } else {
+            System.arraycopy(buffer, position, buffer, 0, unread);
+        }
+        position = 0;
+        limit = unread;
+        while (limit < buffer.length && remaining > 0L) {
+            int toRead = (int) Math.min(buffer.length - limit, remaining);
+            int read = channel.read(ByteBuffer.wrap(buffer, limit, toRead));
+            if (read < 0) {
+                remaining = 0L;
+                break;
+            }
+            limit += read;
+            remaining -= read;
+        }
+        endOfInput = remaining <= 0L;
+    }
+
+    /**
+     * Parses the record starting at the current position.
+     *
+     * @return the position after the record, NEED_MORE if the buffer ends within the record or END if there is no
+     * further record
+     */
+    private int parseRecord() {
+        fieldCount = 0;
+        scratchPosition = 0;
+        int i = position;
+        if (i == limit) {
+            return endOfInput ? END : NEED_MORE;
+        }
+        while (true) {
+            int fieldStart = i;
+            boolean copying = false;
+            boolean inQuotes = false;
+            boolean onlyWhiteSpace = true;
+            int copyStart = scratchPosition;
+            while (true) {
+                if (i == limit) {
+                    if (!endOfInput) {
+                        return NEED_MORE;
+                    }
+                    endField(fieldStart, i, copying, copyStart, true);
+                    return i;
+                }
+                byte b = buffer[i];
+                if (inQuotes) {
+                    if (b == quote) {
+                        if (i + 1 == limit && !endOfInput) {
+                            return NEED_MORE;
+                        }
+                        byte next = i + 1 < limit ? buffer[i + 1] : separator;
+                        if (next == quote) {
+                            append(quote);
+                            i += 2;
+                        } else {
+                            inQuotes = false;
+                            if (next != separator && next != '\n' && next != '\r') {
+                                // a closing quote that is not followed by a separator is kept
+                                append(quote);
+                            }
+                            i++;
+                        }
+                    } else if (escaping && b == escape) {
+                        if (i + 1 == limit && !endOfInput) {
+                            return NEED_MORE;
+                        }
+                        if (i + 1 < limit && !isLineBreak(buffer[i + 1])) {
+                            append(buffer[i + 1]);
+                            i += 2;
+                        } else {
+                            // an escape at the end of a line is dropped, the line break stays in the field
+                            i++;
+                        }
+                    } else {
+                        append(b);
+                        i++;
+                    }
+                    continue;
+                }
+                if (b == separator) {
+                    endField(fieldStart, i, copying, copyStart, false);
+                    i++;
+                    break;
+                }
+                if (b == '\n') {
+                    endField(fieldStart, i, copying, copyStart, true);
+                    return i + 1;
+                }
+                if (quoting && b == quote && (i == fieldStart || (ignoreLeadingWhiteSpace && onlyWhiteSpace))) {
+                    if (!copying) {
+                        // the whitespace in front of the opening quote is dropped
+                        startCopy(i, i);
+                        copying = true;
+                    }
+                    inQuotes = true;
+                    i++;
+                } else if (escaping && b == escape) {
+                    if (i + 1 == limit && !endOfInput) {
+                        return NEED_MORE;
+                    }
+                    if (!copying) {
+                        startCopy(fieldStart, i);
+                        copying = true;
+                    }
+                    if (i + 1 < limit && !isLineBreak(buffer[i + 1])) {
+                        append(buffer[i + 1]);
+                        i += 2;
+                    } else {
+                        // an escape at the end of a line is dropped and does not continue the record
+                        i++;
+                    }
+                } else {
+                    onlyWhiteSpace &= b == ' ' || b == '\t';
+                    if (strictQuotes && quoting) {
+                        // characters outside of quotes are ignored
+                        if (!copying) {
+                            startCopy(fieldStart, fieldStart);
+                            copying = true;
+                        }
+                    } else if (copying) {
+                        append(b);
+                    }
+                    i++;
+                }
+            }
+        }
+    }
+
+    private static boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private void startCopy(int fieldStart, int current) {
+        for (int i = fieldStart; i < current; i++) {
+            append(buffer[i]);
+        }
+    }
+
+    private void append(byte b) {
+        if (scratchPosition == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            // slices of earlier fields of this record point to the old scratch buffer
+            for (int field = 0; field < fieldCount; field++) {
+                if (fieldBuffers[field] != buffer) {
+                    fieldBuffers[field] = scratch;
+                }
+            }
+        }
+        scratch[scratchPosition++] = b;
+    }
+
+    private void endField(int fieldStart, int end, boolean copying, int copyStart, boolean lastField) {
+        if (fieldCount == fieldStarts.length) {
+            int capacity = fieldCount * 2;
+            fieldBuffers = Arrays.copyOf(fieldBuffers, capacity);
+            fieldStarts = Arrays.copyOf(fieldStarts, capacity);
+            fieldLengths = Arrays.copyOf(fieldLengths, capacity);
+            fieldNulls = Arrays.copyOf(fieldNulls, capacity);
+        }
+        byte[] source = copying ? scratch : buffer;
+        int start = copying ? copyStart : fieldStart;
+        int length = copying ? scratchPosition - copyStart : end - fieldStart;
+        if (lastField && length > 0 && source[start + length - 1] == '\r') {
+            length--;
+        }
+        fieldBuffers[fieldCount] = source;
+        fieldStarts[fieldCount] = start;
+        fieldLengths[fieldCount] = length;
+        fieldNulls[fieldCount] = nullValue != null && Arrays.equals(source, start, start + length, nullValue, 0, nullValue.length);
+        fieldCount++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
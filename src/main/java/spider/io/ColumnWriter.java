@@ -0,0 +1,47 @@
+package spider.io;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Consumes the row blocks produced by the {@link RepositoryRunner}s and writes the columns it owns. A writer owns every
+ * column whose index modulo the number of writers equals its own index, so each output has a single writing thread.
+ */
+public class ColumnWriter extends Thread {
+
+    private final BlockingQueue<RowBlock> blockQueue;
+    private final int writerIndex;
+    private final int numWriters;
+
+    public ColumnWriter(BlockingQueue<RowBlock> blockQueue, int writerIndex, int numWriters) {
+        this.blockQueue = blockQueue;
+        this.writerIndex = writerIndex;
+        this.numWriters = numWriters;
+    }
+
+    /**
+     * Writes blocks until the end marker arrives. Failures are reported per block, so that the producers never block on
+     * a full queue of a failed writer.
+     */
+    public void run() {
+        while (true) {
+            RowBlock block;
+            try {
+                block = blockQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (block == RowBlock.END) {
+                return;
+            }
+            for (int column = writerIndex; column < block.numberOfColumns(); column += numWriters) {
+                try {
+                    block.writeColumn(column);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+package spider.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A byte range [start, end) of an input file, whose boundaries are aligned to the start of a record.
+ */
+public class FileRange {
+
+    public final long start;
+    public final long end;
+
+    public FileRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long length() {
+        return end - start;
+    }
+
+    /**
+     * Splits the file into at most the given number of ranges of similar size. Every range except the first one
+     * starts directly after a line break outside of quotes. If values may be quoted, the file is scanned from its
+     * start to tell line breaks inside quoted values apart. Like opencsv, every quote character toggles between
+     * quoted and unquoted, unless the escape character precedes it.
+     *
+     * @param path   the file to split
+     * @param parts  the maximal number of ranges
+     * @param quote  the quote character, 0 if values are not quoted
+     * @param escape the escape character, 0 if there is none
+     * @return the ranges covering the whole file in order
+     */
+    public static List<FileRange> split(Path path, int parts, char quote, char escape) throws IOException {
+        List<FileRange> ranges = new ArrayList<>(parts);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            LineScanner scanner = new LineScanner(channel, quote, escape);
+            long start = 0L;
+            for (int i = 1; i < parts && start < size; i++) {
+                long end = scanner.nextLineStart(Math.max(start, size * i / parts));
+                if (end > start) {
+                    ranges.add(new FileRange(start, end));
+                    start = end;
+                }
+            }
+            if (start < size || ranges.isEmpty()) {
+                ranges.add(new FileRange(start, size));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Finds the line breaks that end a record. The scanner only moves forward and keeps track of whether it is
+     * within quotes, so all bytes in front of a line break are read once.
+     */
+    private static class LineScanner {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private final boolean quoting;
+        private final byte quote;
+        private final boolean escaping;
+        private final byte escape;
+        // the position of the next byte to scan
+        private long position = 0L;
+        private boolean inQuotes = false;
+        private boolean escaped = false;
+
+        LineScanner(FileChannel channel, char quote, char escape) {
+            this.channel = channel;
+            this.quoting = quote != 0;
+            this.quote = (byte) quote;
+            this.escaping = escape != 0 && escape != quote;
+            this.escape = (byte) escape;
+        }
+
+        /**
+         * @return the start of the first record that starts after the given position, the file size if there is none
+         */
+        long nextLineStart(long from) throws IOException {
+            if (!quoting) {
+                // without quotes every line break ends a record
+                position = Math.max(position, from);
+            }
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    position = channel.size();
+                    return position;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer.get(i);
+                    if (escaped) {
+                        escaped = false;
+                        if (b == quote || b == escape) {
+                            continue;
+                        }
+                    }
+                    if (escaping && b == escape) {
+                        escaped = true;
+                    } else if (quoting && b == quote) {
+                        inQuotes = !inQuotes;
+                    } else if (b == '\n' && !inQuotes && position + i >= from) {
+                        position += i + 1;
+                        return position;
+                    }
+                }
+                position += read;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileRange(" + start + ", " + end + ")";
+    }
+}
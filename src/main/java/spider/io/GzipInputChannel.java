@@ -0,0 +1,122 @@
+package spider.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A channel over the decompressed content of a gzip file. A separate thread decompresses the file into a bounded queue
+ * of chunks, so that decompression overlaps with tokenizing and the file never has to be decompressed to disk.
+ */
+public class GzipInputChannel implements ReadableByteChannel {
+
+    private static final int CHUNK_SIZE = 1 << 18;
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread decompressor;
+    private volatile IOException failure;
+
+    private byte[] current;
+    private int position;
+    private boolean ended = false;
+    private boolean open = true;
+
+    /**
+     * @param bufferedChunks the number of decompressed chunks the decompressor may run ahead of the reader
+     */
+    public GzipInputChannel(Path path, int bufferedChunks) throws IOException {
+        InputStream input = new GZIPInputStream(Files.newInputStream(path), 1 << 16);
+        this.chunks = new ArrayBlockingQueue<>(Math.max(1, bufferedChunks));
+        this.decompressor = new Thread(() -> decompress(input), "gunzip-" + path.getFileName());
+        this.decompressor.setDaemon(true);
+        this.decompressor.start();
+    }
+
+    /**
+     * @return true if the file is gzip compressed, judged by its name
+     */
+    public static boolean isCompressed(File file) {
+        return file.getName().endsWith(".gz");
+    }
+
+    /**
+     * @return the name of the file without the .gz suffix
+     */
+    public static String stripSuffix(String fileName) {
+        return fileName.endsWith(".gz") ? fileName.substring(0, fileName.length() - 3) : fileName;
+    }
+
+    private void decompress(InputStream input) {
+        try (input) {
+            int filled;
+            do {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                filled = input.readNBytes(chunk, 0, CHUNK_SIZE);
+                if (filled > 0) {
+                    chunks.put(filled == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, filled));
+                }
+            } while (filled == CHUNK_SIZE);
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // the channel was closed
+            return;
+        }
+        try {
+            chunks.put(END);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        if (current == null || position == current.length) {
+            if (ended) {
+                return -1;
+            }
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for decompressed data");
+            }
+            position = 0;
+            if (current == END) {
+                ended = true;
+                if (failure != null) {
+                    throw new IOException("Could not decompress the input", failure);
+                }
+                return -1;
+            }
+        }
+        int length = Math.min(destination.remaining(), current.length - position);
+        destination.put(current, position, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        decompressor.interrupt();
+    }
+}
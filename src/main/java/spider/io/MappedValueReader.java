@@ -0,0 +1,127 @@
+package spider.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a sorted attribute file that is mapped into memory, so that reading relies on the page cache instead of a heap
+ * buffer per file. A single mapping is limited to 2 GB, larger files are mapped in several chunks. Every value is
+ * copied from the mapping into a reused array, also if it crosses the border of two chunks.
+ */
+public class MappedValueReader implements ValueReader {
+
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+    private long position = 0L;
+    // -1 until the header is read, otherwise the restart interval of front coded values or 0
+    private int restartInterval = -1;
+    private byte[] value = new byte[64];
+
+    public MappedValueReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) i << CHUNK_BITS;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+        }
+    }
+
+    @Override
+    public int readValueBytes() throws IOException {
+        if (restartInterval < 0 && !readHeader()) {
+            return -1;
+        }
+        if (position >= size) {
+            return -1;
+        }
+        int shared = restartInterval > 0 ? (int) readVarLong() : 0;
+        int length = shared + (int) readVarLong();
+        if (value.length < length) {
+            value = Arrays.copyOf(value, Math.max(length, value.length * 2));
+        }
+        // the shared prefix is still in place from the previous value
+        read(value, shared, length - shared);
+        return length;
+    }
+
+    private boolean readHeader() throws IOException {
+        if (position >= size) {
+            return false;
+        }
+        restartInterval = (int) readVarLong();
+        return true;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+        return value;
+    }
+
+    @Override
+    public int getValueStart() {
+        return 0;
+    }
+
+    @Override
+    public long readOccurrences() throws IOException {
+        return readVarLong();
+    }
+
+    @Override
+    public void seek(long offset) throws IOException {
+        if (restartInterval < 0) {
+            readHeader();
+        }
+        position = offset;
+    }
+
+    private long readVarLong() throws IOException {
+        long result = 0L;
+        int shift = 0;
+        byte current;
+        do {
+            if (position >= size) {
+                throw new EOFException("Truncated varint");
+            }
+            current = chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & (CHUNK_SIZE - 1)));
+            position++;
+            result |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return result;
+    }
+
+    private void read(byte[] target, int offset, int length) throws IOException {
+        if (size - position < length) {
+            throw new EOFException("Truncated value");
+        }
+        while (length > 0) {
+            int inChunk = (int) (position & (CHUNK_SIZE - 1));
+            int bytes = (int) Math.min(length, CHUNK_SIZE - inChunk);
+            chunks[(int) (position >>> CHUNK_BITS)].get(inChunk, target, offset, bytes);
+            position += bytes;
+            offset += bytes;
+            length -= bytes;
+        }
+    }
+
+    /**
+     * Closes the file and drops the mapped chunks. The mappings are only released once they are garbage collected, so
+     * on platforms that refuse to delete mapped files, e.g. Windows, the file can only be deleted after that.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Arrays.fill(chunks, null);
+    }
+}
@@ -0,0 +1,174 @@
+package spider.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges sorted runs on the fly and yields every distinct value once with the summed occurrences. The head values of
+ * the runs play in a loser tree, so every merged value costs about log k comparisons of the raw UTF-8 bytes, and only
+ * the path of the advanced run is replayed.
+ */
+public class MergedRuns implements ValueSource {
+
+    private final BinaryValueReader[] readers;
+    // length of the head value of every run, -1 once the run is exhausted
+    private final int[] lengths;
+    private final long[] occurrences;
+    // tree[0] holds the run with the smallest head value, the inner nodes hold the loser of their match
+    private final int[] tree;
+
+    private byte[] currentBytes = new byte[64];
+    private int currentLength = -1;
+    private long currentOccurrences;
+    private String currentValue;
+
+    /**
+     * Opens the runs and moves to the first value.
+     */
+    public MergedRuns(List<Path> runs) throws IOException {
+        int k = runs.size();
+        this.readers = new BinaryValueReader[k];
+        this.lengths = new int[k];
+        this.occurrences = new long[k];
+        this.tree = new int[Math.max(1, k)];
+
+        for (int index = 0; index < k; ++index) {
+            this.readers[index] = new BinaryValueReader(runs.get(index));
+            readHead(index);
+        }
+        // -1 beats every run, replaying all leaves pushes these placeholders out of the tree
+        Arrays.fill(this.tree, -1);
+        for (int index = k - 1; index >= 0; --index) {
+            replay(index);
+        }
+        advance();
+    }
+
+    private void readHead(int run) throws IOException {
+        this.lengths[run] = this.readers[run].readValueBytes();
+        if (this.lengths[run] >= 0) {
+            this.occurrences[run] = this.readers[run].readOccurrences();
+        }
+    }
+
+    /**
+     * Plays the head value of the run against the losers on the path to the root.
+     */
+    private void replay(int run) {
+        int winner = run;
+        for (int node = (run + this.readers.length) >> 1; node > 0; node >>= 1) {
+            int loser = this.tree[node];
+            if (loser == -1 || (winner != -1 && beats(loser, winner))) {
+                this.tree[node] = winner;
+                winner = loser;
+            }
+        }
+        this.tree[0] = winner;
+    }
+
+    /**
+     * @return true if the head value of run a is smaller than the one of run b, exhausted runs lose against all others
+     */
+    private boolean beats(int a, int b) {
+        if (this.lengths[a] < 0) {
+            return false;
+        }
+        if (this.lengths[b] < 0) {
+            return true;
+        }
+        BinaryValueReader readerA = this.readers[a];
+        BinaryValueReader readerB = this.readers[b];
+        int startA = readerA.getValueStart();
+        int startB = readerB.getValueStart();
+        int comparison = Arrays.compareUnsigned(readerA.getBuffer(), startA, startA + this.lengths[a],
+                readerB.getBuffer(), startB, startB + this.lengths[b]);
+        return comparison < 0 || (comparison == 0 && a < b);
+    }
+
+    private boolean headEqualsCurrent(int run) {
+        BinaryValueReader reader = this.readers[run];
+        int start = reader.getValueStart();
+        return Arrays.equals(this.currentBytes, 0, this.currentLength, reader.getBuffer(), start, start + this.lengths[run]);
+    }
+
+    /**
+     * Moves to the next distinct value without decoding it.
+     */
+    @Override
+    public void advance() throws IOException {
+        this.currentValue = null;
+        if (this.readers.length == 0 || this.lengths[this.tree[0]] < 0) {
+            this.currentLength = -1;
+            return;
+        }
+        int winner = this.tree[0];
+        BinaryValueReader reader = this.readers[winner];
+        int length = this.lengths[winner];
+        if (this.currentBytes.length < length) {
+            this.currentBytes = new byte[Math.max(length, this.currentBytes.length * 2)];
+        }
+        System.arraycopy(reader.getBuffer(), reader.getValueStart(), this.currentBytes, 0, length);
+        this.currentLength = length;
+        this.currentOccurrences = 0L;
+        // equal values of other runs follow directly, since they lose against every greater value
+        do {
+            this.currentOccurrences += this.occurrences[winner];
+            readHead(winner);
+            replay(winner);
+            winner = this.tree[0];
+        } while (this.lengths[winner] >= 0 && headEqualsCurrent(winner));
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.currentLength >= 0;
+    }
+
+    @Override
+    public String next() {
+        try {
+            advance();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return getCurrentValue();
+    }
+
+    @Override
+    public String getCurrentValue() {
+        if (this.currentValue == null && this.currentLength >= 0) {
+            this.currentValue = new String(this.currentBytes, 0, this.currentLength, StandardCharsets.UTF_8);
+        }
+        return this.currentValue;
+    }
+
+    @Override
+    public byte[] getCurrentBytes() {
+        return this.currentBytes;
+    }
+
+    @Override
+    public int getCurrentStart() {
+        return 0;
+    }
+
+    @Override
+    public int getCurrentLength() {
+        return this.currentLength;
+    }
+
+    @Override
+    public long getCurrentOccurrences() {
+        return this.currentOccurrences;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (BinaryValueReader reader : this.readers) {
+            reader.close();
+        }
+    }
+}
@@ -1,92 +1,128 @@
 package spider.io;
 
-import spider.structures.Attribute;
-import spider.structures.Entry;
-
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
-
+import java.util.function.Supplier;
+
+/**
+ * Writes sorted runs merged by {@link MergedRuns} into a single file. At most fanIn runs are opened at once. If there
+ * are more, the smallest runs are merged into intermediate runs first, like the nodes of a Huffman tree with fanIn
+ * children. The first pass merges just enough runs that every later pass is a full one, so every value is written
+ * as few times as possible.
+ */
 public class Merger {
-    private PriorityQueue<Entry> headValues;
-    private BufferedReader[] readers;
 
-    private void init(List<Path> files) throws IOException {
-        this.headValues = new PriorityQueue<>(files.size());
-        this.readers = new BufferedReader[files.size()];
-
-        for (int index = 0; index < files.size(); ++index) {
-            BufferedReader reader = Files.newBufferedReader(files.get(index));
-            this.readers[index] = reader;
-            String firstLine = reader.readLine();
-            if (firstLine != null) {
-                long occurrence = Long.parseLong(reader.readLine());
-                this.headValues.add(new Entry(firstLine, occurrence, index));
-            }
-        }
-
-    }
+    public static final int DEFAULT_MAX_FAN_IN = 512;
 
-    public void merge(List<Path> files, Path to, Attribute attribute) throws IOException {
-        this.init(files);
-        BufferedWriter output = Files.newBufferedWriter(to, StandardOpenOption.TRUNCATE_EXISTING);
+    private final int fanIn;
+    private final Supplier<Path> intermediateFiles;
+    private final int restartInterval;
 
-        String previousValue = null;
-        long occurrence = 0L;
-        Entry current;
+    private static class Run {
+        final Path path;
+        final long size;
+        final boolean intermediate;
 
-        while (!this.headValues.isEmpty()) {
-            current = this.headValues.poll();
-            if (previousValue != null && !current.getValue().equals(previousValue)) {
-                writeValue(attribute, output, previousValue, occurrence);
-                occurrence = 0L;
-            }
-            occurrence += current.getOccurrence();
-            previousValue = current.getValue();
-
-            String nextValue = this.readers[current.getReaderNumber()].readLine();
-            if (nextValue != null) {
-                updateHeadValues(current, nextValue);
-            }
+        Run(Path path, long size, boolean intermediate) {
+            this.path = path;
+            this.size = size;
+            this.intermediate = intermediate;
         }
-        // save the last value
-        writeValue(attribute, output, previousValue, occurrence);
+    }
 
-        // flush and close all outputs
-        output.flush();
-        output.close();
-        closeReaders();
+    /**
+     * Creates the writer of the merged values once the last pass starts.
+     */
+    public interface OutputFactory {
+        BinaryValueWriter create() throws IOException;
+    }
 
+    /**
+     * Creates a merger that opens all runs at once.
+     */
+    public Merger() {
+        this(Integer.MAX_VALUE, null, 0);
     }
 
-    private void updateHeadValues(Entry current, String nextValue) throws IOException {
-        long nextOccurrence = Long.parseLong(this.readers[current.getReaderNumber()].readLine());
-        current.setValue(nextValue);
-        current.setOccurrence(nextOccurrence);
-        this.headValues.add(current);
+    /**
+     * @param fanIn             the maximum number of runs opened at once
+     * @param intermediateFiles creates the paths of the intermediate runs
+     * @param restartInterval   the restart interval of the front coded intermediate runs, 0 writes the values in full
+     */
+    public Merger(int fanIn, Supplier<Path> intermediateFiles, int restartInterval) {
+        this.fanIn = Math.max(2, fanIn);
+        this.intermediateFiles = intermediateFiles;
+        this.restartInterval = restartInterval;
     }
 
-    private void writeValue(Attribute attribute, BufferedWriter output, String previousValue, long occurrence) throws IOException {
-        output.write(previousValue);
-        output.newLine();
-        output.write(String.valueOf(occurrence));
-        output.newLine();
-        attribute.setUniqueSize(attribute.getUniqueSize() + 1L);
+    /**
+     * @param bufferMemory the number of bytes the read buffers of the runs may occupy
+     * @param maxFanIn     the maximum number of runs opened at once, e.g. to respect the limit of file handles
+     * @return the number of runs that can be merged at once
+     */
+    public static int fanIn(long bufferMemory, int maxFanIn) {
+        return (int) Math.max(2L, Math.min(maxFanIn, bufferMemory / BinaryValueReader.BUFFER_SIZE));
     }
 
-    private void closeReaders() throws IOException {
-        BufferedReader[] readers = this.readers;
+    /**
+     * Merges the sorted files into the output and closes it. The output is only created after the intermediate
+     * passes, so that it is not held while they run.
+     *
+     * @return the number of distinct values written
+     */
+    public long merge(List<Path> files, OutputFactory output) throws IOException {
+        if (files.size() <= fanIn) {
+            return mergeRuns(files, output.create());
+        }
+
+        PriorityQueue<Run> runs = new PriorityQueue<>(Comparator.comparingLong((Run run) -> run.size));
+        for (Path file : files) {
+            runs.add(new Run(file, Files.size(file), false));
+        }
+        // after merging (runs - 2) % (fanIn - 1) + 2 runs first, every further merge of fanIn runs ends exactly at fanIn
+        int count = (runs.size() - 2) % (fanIn - 1) + 2;
+        while (runs.size() > fanIn) {
+            List<Run> group = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                group.add(runs.poll());
+            }
+            Path target = intermediateFiles.get();
+            mergeRuns(group.stream().map(run -> run.path).toList(), new BinaryValueWriter(target, restartInterval));
+            deleteIntermediate(group);
+            runs.add(new Run(target, Files.size(target), true));
+            count = fanIn;
+        }
+        List<Run> last = new ArrayList<>(runs);
+        long uniqueSize = mergeRuns(last.stream().map(run -> run.path).toList(), output.create());
+        deleteIntermediate(last);
+        return uniqueSize;
+    }
 
-        for (BufferedReader reader : readers) {
-            if (reader != null) {
-                reader.close();
+    private static void deleteIntermediate(List<Run> runs) throws IOException {
+        for (Run run : runs) {
+            if (run.intermediate) {
+                Files.delete(run.path);
             }
         }
+    }
+
+    private long mergeRuns(List<Path> files, BinaryValueWriter output) throws IOException {
+        MergedRuns runs = new MergedRuns(files);
+        long uniqueSize = 0L;
+        while (runs.hasNext()) {
+            output.writeEntry(runs.getCurrentBytes(), 0, runs.getCurrentLength(), runs.getCurrentOccurrences());
+            uniqueSize++;
+            runs.advance();
+        }
 
+        // flush and close all outputs
+        output.close();
+        runs.close();
+        return uniqueSize;
     }
 }
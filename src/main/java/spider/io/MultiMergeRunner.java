@@ -1,46 +1,75 @@
 package spider.io;
 
 import spider.structures.Attribute;
+import spider.structures.MemoryBudget;
 import spider.structures.MultiwayMergeSort;
+import spider.structures.RangePartitionedSort;
 import spider.utils.DuplicateHandling;
 
 import java.io.IOException;
-import java.util.Queue;
 
 /**
- * Runner that executes a Multiway MergeSort over a queue of attributes
+ * Runner that executes a Multiway MergeSort for every attribute the scheduler hands out
  */
 public class MultiMergeRunner extends Thread {
 
-    private final Queue<Attribute> attributeQueue;
-    private int maxMemory;
+    private final SortScheduler scheduler;
+    private MemoryBudget budget;
+    private boolean offHeap;
+    private boolean asyncSpill;
+    private int maxLazyRuns;
+    private int maxFanIn;
+    private int numThreads;
     private double threshold;
     private DuplicateHandling duplicateHandling;
 
     /**
-     * @param attributeQueue A Queue of attributes which still need to be processed
-     * @param config         The configuration that should be used for the MultiwayMergeSort execution
+     * @param scheduler The scheduler that hands out the attributes which still need to be processed
+     * @param budget    The shared budget that signals memory pressure
+     * @param offHeap   Whether the values are counted off heap
+     * @param asyncSpill Whether spill files are written in the background while counting continues
+     * @param maxFanIn  The maximum number of runs merged at once
+     * @param maxLazyRuns Attributes that spill into at most this many runs are merged while they are validated
+     * @param numThreads The number of threads that sort the attributes the scheduler marks as parallel
      */
-    public MultiMergeRunner(Queue<Attribute> attributeQueue, int maxMemory, double threshold, DuplicateHandling duplicateHandling) {
-        this.attributeQueue = attributeQueue;
-        this.maxMemory = maxMemory;
+    public MultiMergeRunner(SortScheduler scheduler, MemoryBudget budget, boolean offHeap, boolean asyncSpill, int maxFanIn, int maxLazyRuns, int numThreads, double threshold, DuplicateHandling duplicateHandling) {
+        this.scheduler = scheduler;
+        this.budget = budget;
+        this.offHeap = offHeap;
+        this.asyncSpill = asyncSpill;
+        this.maxFanIn = maxFanIn;
+        this.maxLazyRuns = maxLazyRuns;
+        this.numThreads = numThreads;
         this.threshold = threshold;
         this.duplicateHandling = duplicateHandling;
     }
 
     /**
-     * While there are attributes left to be processed, the Thread polls the next in queue and processes it.
+     * While there are attributes left to be processed, the Thread sorts the next one within its memory grant.
      */
     public void run() {
-        while (!attributeQueue.isEmpty()) {
-            Attribute attribute = attributeQueue.poll();
-            if (attribute == null) continue;
-            int maxSize = (int) Math.min(attribute.getSize(), maxMemory);
-            MultiwayMergeSort multiwayMergeSort = new MultiwayMergeSort(maxMemory, attribute, maxSize);
+        while (true) {
+            SortScheduler.Task task;
             try {
-                multiwayMergeSort.sort();
+                task = scheduler.next();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) return;
+            Attribute attribute = task.attribute;
+            try {
+                if (task.parallel) {
+                    // the scheduler starts no other sort meanwhile, so this sort may use all threads
+                    new RangePartitionedSort(attribute, task.grant, numThreads, budget, offHeap, asyncSpill, maxFanIn).sort();
+                } else {
+                    int capacity = MultiwayMergeSort.initialCapacity(task.grant, attribute.getDistinctSketch().estimate());
+                    new MultiwayMergeSort(task.grant, attribute, capacity, budget, offHeap, asyncSpill, maxFanIn).sort(maxLazyRuns);
+                }
             } catch (IOException e) {
                 e.printStackTrace();
+            } finally {
+                scheduler.release(task);
             }
             attribute.calculateViolations(threshold, duplicateHandling);
         }
@@ -0,0 +1,154 @@
+package spider.io;
+
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+import de.metanome.algorithm_integration.configuration.ConfigurationSettingFileInput;
+import de.metanome.algorithm_integration.input.InputIterationException;
+import de.metanome.algorithm_integration.input.RelationalInput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A RelationalInput that only reads the records inside a {@link FileRange} of a csv file. It follows the settings of
+ * the file input, so that several range inputs of one file return the same rows as a single input of the whole file.
+ */
+public class RangeRelationalInput implements RelationalInput {
+
+    private final String relationName;
+    private final List<String> columnNames;
+    private final CSVReader reader;
+    private final String nullValue;
+    private final boolean skipDifferingLines;
+    private String[] nextLine;
+
+    /**
+     * @param path        the csv file
+     * @param setting     the settings used to parse the file
+     * @param range       the range of the file that should be read
+     * @param columnNames the column names of the whole file
+     */
+    public RangeRelationalInput(Path path, ConfigurationSettingFileInput setting, FileRange range, String relationName, List<String> columnNames) throws IOException, InputIterationException {
+        this.relationName = relationName;
+        this.columnNames = columnNames;
+        this.nullValue = setting.getNullValue();
+        this.skipDifferingLines = setting.isSkipDifferingLines();
+
+        InputStreamReader input = new InputStreamReader(new RegionInputStream(path, range), StandardCharsets.UTF_8);
+        // only the first range contains the header and the lines that should be skipped
+        int skipLines = range.start == 0L ? setting.getSkipLines() + (setting.hasHeader() ? 1 : 0) : 0;
+        this.reader = new CSVReaderBuilder(input)
+                .withSkipLines(skipLines)
+                .withCSVParser(new CSVParserBuilder()
+                        .withSeparator(setting.getSeparatorAsChar())
+                        .withQuoteChar(setting.getQuoteCharAsChar())
+                        .withEscapeChar(setting.getEscapeCharAsChar())
+                        .withStrictQuotes(setting.isStrictQuotes())
+                        .withIgnoreLeadingWhiteSpace(setting.isIgnoreLeadingWhiteSpace())
+                        .build())
+                .build();
+        this.nextLine = readNextLine();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextLine != null;
+    }
+
+    @Override
+    public List<String> next() throws InputIterationException {
+        String[] currentLine = nextLine;
+        nextLine = readNextLine();
+        if (currentLine.length != columnNames.size()) {
+            throw new InputIterationException("Csv line length did not match on line " + Arrays.toString(currentLine));
+        }
+        for (int i = 0; i < currentLine.length; i++) {
+            if (currentLine[i].equals(nullValue)) {
+                currentLine[i] = null;
+            }
+        }
+        return Arrays.asList(currentLine);
+    }
+
+    private String[] readNextLine() throws InputIterationException {
+        try {
+            String[] line = reader.readNext();
+            while (skipDifferingLines && line != null && line.length != columnNames.size()) {
+                line = reader.readNext();
+            }
+            return line;
+        } catch (CsvValidationException | IOException e) {
+            throw new InputIterationException("Could not read the next line", e);
+        }
+    }
+
+    @Override
+    public int numberOfColumns() {
+        return columnNames.size();
+    }
+
+    @Override
+    public String relationName() {
+        return relationName;
+    }
+
+    @Override
+    public List<String> columnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public void close() throws Exception {
+        reader.close();
+    }
+
+    /**
+     * Streams the bytes of a single range using positional reads.
+     */
+    private static class RegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RegionInputStream(Path path, FileRange range) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.position = range.start;
+            this.end = range.end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int toRead = (int) Math.min(length, end - position);
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, toRead), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
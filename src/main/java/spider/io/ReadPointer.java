@@ -1,43 +1,126 @@
 package spider.io;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.Iterator;
 
-public class ReadPointer implements Iterator<String> {
+/**
+ * Iterates the entries of a sorted attribute file. Each entry consists of a value and its number of occurrences. If
+ * the file has a {@link BlockIndex}, seeking jumps to the last indexed value in front of the target.
+ */
+public class ReadPointer implements ValueSource {
 
-    private final BufferedReader reader;
+    private final ValueReader reader;
+    private int currentLength = -1;
+    private long currentOccurrences;
+    // decoded on demand
     private String currentValue;
     public final Path path;
+    private final BlockIndex index;
+    // the first index entry that may still lie ahead
+    private int indexEntry = 0;
 
     public ReadPointer(Path path) throws IOException {
+        this(new BinaryValueReader(path), path, BlockIndex.read(BlockIndex.pathOf(path)));
+    }
+
+    /**
+     * @param path the file the reader reads, null if it reads from a segment
+     */
+    public ReadPointer(ValueReader reader, Path path) {
+        this(reader, path, null);
+    }
+
+    /**
+     * @param index the block index of the file, null if it has none
+     */
+    public ReadPointer(ValueReader reader, Path path, BlockIndex index) {
         this.path = path;
-        this.reader = new BufferedReader(new FileReader(String.valueOf(path)));
-        currentValue = reader.readLine();
+        this.reader = reader;
+        this.index = index;
+        next();
     }
 
+    @Override
     public String getCurrentValue() {
+        if (currentValue == null && currentLength >= 0) {
+            currentValue = new String(reader.getBuffer(), reader.getValueStart(), currentLength, StandardCharsets.UTF_8);
+        }
         return currentValue;
     }
 
+    @Override
+    public long getCurrentOccurrences() {
+        return currentOccurrences;
+    }
+
+    @Override
+    public byte[] getCurrentBytes() {
+        return reader.getBuffer();
+    }
+
+    @Override
+    public int getCurrentStart() {
+        return reader.getValueStart();
+    }
+
+    @Override
+    public int getCurrentLength() {
+        return currentLength;
+    }
+
+    @Override
     public boolean hasNext() {
-        return currentValue != null;
+        return currentLength >= 0;
     }
 
+    /**
+     * Moves to the next entry.
+     *
+     * @return the value of the next entry or null if the file is exhausted
+     */
+    @Override
     public String next() {
-        if (currentValue == null) {
-            return null;
-        }
         try {
-            currentValue = reader.readLine();
-            return currentValue;
+            advance();
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
+        return getCurrentValue();
+    }
+
+    @Override
+    public void advance() throws IOException {
+        currentValue = null;
+        currentLength = reader.readValueBytes();
+        if (currentLength >= 0) {
+            currentOccurrences = reader.readOccurrences();
+        }
+    }
+
+    @Override
+    public void seek(byte[] target, int start, int length) throws IOException {
+        if (!hasNext() || compareCurrent(target, start, length) >= 0) {
+            return;
+        }
+        if (index != null) {
+            int entry = index.floor(target, start, length, indexEntry);
+            if (entry >= indexEntry) {
+                indexEntry = entry + 1;
+                // only jump forward, the current value may already lie behind the indexed one
+                byte[] indexed = index.getValue(entry);
+                if (compareCurrent(indexed, 0, indexed.length) < 0) {
+                    reader.seek(index.getOffset(entry));
+                    advance();
+                }
+            }
+        }
+        while (hasNext() && compareCurrent(target, start, length) < 0) {
+            advance();
+        }
     }
 
+    @Override
     public void close() throws IOException {
         reader.close();
     }
@@ -9,13 +9,37 @@ public class RelationalInputWrapper {
     public int tableOffset;
     public String relationName;
     public String[] headerLine;
+    // index of the file range this wrapper reads, 0 if it reads the whole table
+    public int part;
     RelationalInput input;
+    // set instead of input if the table is tokenized on byte level
+    ByteCsvReader byteInput;
 
     public RelationalInputWrapper(int tableOffset, String relationName, RelationalInput input) {
+        this(tableOffset, relationName, input, 0);
+    }
+
+    public RelationalInputWrapper(int tableOffset, String relationName, RelationalInput input, int part) {
         this.tableOffset = tableOffset;
         this.relationName = relationName;
         this.headerLine = input.columnNames().toArray(new String[0]);
         this.input = input;
+        this.part = part;
+    }
+
+    public RelationalInputWrapper(int tableOffset, String relationName, String[] headerLine, ByteCsvReader byteInput, int part) {
+        this.tableOffset = tableOffset;
+        this.relationName = relationName;
+        this.headerLine = headerLine;
+        this.byteInput = byteInput;
+        this.part = part;
+    }
+
+    /**
+     * @return the byte level reader of the table or null if the rows are read through a RelationalInput
+     */
+    public ByteCsvReader getByteInput() {
+        return byteInput;
     }
 
     public int numberOfColumns() {
@@ -31,6 +55,11 @@ public class RelationalInputWrapper {
     }
 
     public void close() throws Exception {
-        input.close();
+        if (input != null) {
+            input.close();
+        }
+        if (byteInput != null) {
+            byteInput.close();
+        }
     }
 }
@@ -1,27 +1,69 @@
 package spider.io;
 
-import de.metanome.algorithm_integration.input.InputIterationException;
-import de.metanome.algorithm_integration.input.RelationalInput;
 import spider.structures.Attribute;
+import spider.structures.MemoryBudget;
+import spider.structures.MultiwayMergeSort;
+import spider.utils.RowSampling;
 
-import java.io.BufferedWriter;
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
 
+/**
+ * Parses tables from the queue and emits their rows as columnar {@link RowBlock}s to the {@link ColumnWriter}s, so that
+ * parsing and writing the attribute files overlap.
+ */
 public class RepositoryRunner extends Thread {
 
     Queue<RelationalInputWrapper> tableQueue;
     Attribute[] attributeIndex;
-    String tempFolderPath;
+    TempStorage tempStorage;
+    boolean deduplicate;
+    long memoryLimit;
+    MemoryBudget budget;
+    boolean offHeap;
+    List<BlockingQueue<RowBlock>> writerQueues;
+    int blockSize;
+    long rowLimit;
+    RowSampling rowSampling;
+    boolean[] activeAttributes;
+    int restartInterval;
+    int indexInterval;
 
-    public RepositoryRunner(Queue<RelationalInputWrapper> tableQueue, Attribute[] attributeIndex, String tempFolderPath) {
+    /**
+     * @param deduplicate  if true, values are counted into per-column maps and only sorted, deduplicated runs are
+     *                     written instead of the raw attribute files
+     * @param memoryLimit  the number of bytes this runner may hold in memory across all columns of a table
+     * @param budget       the shared budget that signals memory pressure
+     * @param offHeap      whether the deduplicating sorters count values off heap
+     * @param writerQueues the queues of the column writers, the i-th writer owns the columns i, i + n, i + 2n, ...
+     * @param blockSize    the number of rows per block
+     * @param rowLimit     the maximum number of rows read per table, 0 reads all rows
+     * @param rowSampling  whether the first rows or a uniform sample of rows are read if the rows are limited
+     * @param activeAttributes the attributes that take part in any candidate, values of other attributes are dropped
+     * @param restartInterval  the restart interval of the front coded sorted files, 0 writes the values in full
+     * @param indexInterval    the number of values between two entries of the block index of the sorted files
+     */
+    public RepositoryRunner(Queue<RelationalInputWrapper> tableQueue, Attribute[] attributeIndex, TempStorage tempStorage, boolean deduplicate, long memoryLimit, MemoryBudget budget, boolean offHeap, List<BlockingQueue<RowBlock>> writerQueues, int blockSize, long rowLimit, RowSampling rowSampling, boolean[] activeAttributes, int restartInterval, int indexInterval) {
         this.tableQueue = tableQueue;
         this.attributeIndex = attributeIndex;
-        this.tempFolderPath = tempFolderPath;
+        this.tempStorage = tempStorage;
+        this.deduplicate = deduplicate;
+        this.memoryLimit = memoryLimit;
+        this.budget = budget;
+        this.offHeap = offHeap;
+        this.writerQueues = writerQueues;
+        this.blockSize = blockSize;
+        this.rowLimit = rowLimit;
+        this.rowSampling = rowSampling;
+        this.activeAttributes = activeAttributes;
+        this.restartInterval = restartInterval;
+        this.indexInterval = indexInterval;
     }
 
     public void run() {
@@ -30,70 +72,227 @@ public class RepositoryRunner extends Thread {
             if (table == null) continue;
 
             int tableOffset = table.tableOffset;
-            Path[] paths = generatePaths(tableOffset, table.numberOfColumns());
+            Path[] paths = generatePaths(tableOffset, table.numberOfColumns(), table.part);
             try {
-                BufferedWriter[] writers = attachWriters(paths);
+                createAttributes(table, attributeIndex);
 
-                createAttributes(table, attributeIndex, paths);
-
-                store(table, writers, attributeIndex, tableOffset);
+                Attribute[] tableAttributes = Arrays.copyOfRange(attributeIndex, tableOffset, tableOffset + paths.length);
+                TableSink sink;
+                if (deduplicate) {
+                    sink = new TableSink(null, attachSorters(tableOffset, paths.length), tableAttributes);
+                } else {
+                    sink = new TableSink(attachWriters(tableOffset, paths), null, tableAttributes);
+                    for (int i = 0; i < paths.length; i++) {
+                        if (activeAttributes[tableOffset + i]) {
+                            attributeIndex[tableOffset + i].addRawFile(paths[i]);
+                        }
+                    }
+                }
+                store(table, sink, attributeIndex, tableOffset);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
     }
 
-    private void createAttributes(RelationalInputWrapper table, Attribute[] attributeIndex, Path[] paths) {
-        for (int i = 0; i < table.numberOfColumns(); i++) {
-            attributeIndex[table.tableOffset + i] = new Attribute(
-                    table.tableOffset + i,
-                    paths[i],
-                    table.relationName,
-                    table.headerLine[i]
-            );
+    /**
+     * Creates the attributes of the table, unless another runner already did so for a different part of the table.
+     */
+    private void createAttributes(RelationalInputWrapper table, Attribute[] attributeIndex) {
+        synchronized (attributeIndex) {
+            if (attributeIndex[table.tableOffset] != null) {
+                return;
+            }
+            Path[] paths = generatePaths(table.tableOffset, table.numberOfColumns(), 0);
+            for (int i = 0; i < table.numberOfColumns(); i++) {
+                attributeIndex[table.tableOffset + i] = new Attribute(
+                        table.tableOffset + i,
+                        paths[i],
+                        table.relationName,
+                        table.headerLine[i],
+                        tempStorage,
+                        restartInterval,
+                        indexInterval
+                );
+            }
         }
     }
 
-    private void store(RelationalInputWrapper table, BufferedWriter[] writers, Attribute[] attributeIndex, int tableOffset) throws Exception {
+    /**
+     * Reads all rows of the table into blocks and hands every full block to the column writers. The last block of the
+     * table tells the writers to close the outputs of the table.
+     */
+    private void store(RelationalInputWrapper table, TableSink sink, Attribute[] attributeIndex, int tableOffset) throws Exception {
+        if (rowLimit > 0L && rowSampling == RowSampling.RESERVOIR) {
+            storeSample(table, sink, attributeIndex, tableOffset);
+            return;
+        }
+        ByteCsvReader reader = table.getByteInput();
+        int numColumns = table.numberOfColumns();
         long tableSize = 0L;
-        while (table.hasNext()) {
+        long[] nullCounts = new long[numColumns];
+        RowBlock block = new RowBlock(sink, numColumns, blockSize);
+        while ((rowLimit <= 0L || tableSize < rowLimit) && (reader != null ? reader.nextRecord() : table.hasNext())) {
             tableSize++;
-            final List<String> next = table.next();
-            for (int index = 0; index < writers.length; index++) {
-                final String value = index >= next.size() ? null : next.get(index);
-                if (value != null) {
-                    writers[index].write(escape(value));
-                    writers[index].newLine();
-                } else {
-                    attributeIndex[tableOffset+index].incNullCount();
+            if (reader != null) {
+                for (int index = 0; index < numColumns; index++) {
+                    if (reader.isNull(index)) {
+                        nullCounts[index]++;
+                        block.addNull(index);
+                    } else {
+                        block.add(index, reader.getBuffer(index), reader.getStart(index), reader.getLength(index));
+                    }
+                }
+            } else {
+                final List<String> next = table.next();
+                for (int index = 0; index < numColumns; index++) {
+                    final String value = index >= next.size() ? null : next.get(index);
+                    if (value == null) {
+                        nullCounts[index]++;
+                    }
+                    block.add(index, value);
+                }
+            }
+            block.endRow();
+            if (block.isFull()) {
+                dispatch(block);
+                block = new RowBlock(sink, numColumns, blockSize);
+            }
+        }
+        finish(table, block, attributeIndex, tableOffset, tableSize, nullCounts);
+    }
+
+    /**
+     * Draws a uniform sample of rowLimit rows from the table by reservoir sampling and stores only the sampled rows.
+     * The sample is held in memory until the table is read completely.
+     */
+    private void storeSample(RelationalInputWrapper table, TableSink sink, Attribute[] attributeIndex, int tableOffset) throws Exception {
+        ByteCsvReader reader = table.getByteInput();
+        int numColumns = table.numberOfColumns();
+        List<String[]> sample = new ArrayList<>((int) Math.min(rowLimit, 1 << 16));
+        // seeded by the table, so that repeated runs draw the same sample
+        Random random = new Random(tableOffset);
+        long seen = 0L;
+        while (reader != null ? reader.nextRecord() : table.hasNext()) {
+            seen++;
+            int slot = reservoirSlot(seen, sample.size(), rowLimit, random);
+            if (slot < 0) {
+                if (reader == null) {
+                    table.next();
+                }
+                continue;
+            }
+            String[] row = new String[numColumns];
+            if (reader != null) {
+                for (int index = 0; index < numColumns; index++) {
+                    row[index] = reader.isNull(index) ? null : reader.getString(index);
+                }
+            } else {
+                final List<String> next = table.next();
+                for (int index = 0; index < numColumns && index < next.size(); index++) {
+                    row[index] = next.get(index);
                 }
             }
+            if (slot == sample.size()) {
+                sample.add(row);
+            } else {
+                sample.set(slot, row);
+            }
         }
-        for (int i = 0; i < writers.length; i++) {
-            attributeIndex[tableOffset+i].setSize(tableSize);
-            writers[i].flush();
-            writers[i].close();
+
+        long[] nullCounts = new long[numColumns];
+        RowBlock block = new RowBlock(sink, numColumns, blockSize);
+        for (String[] row : sample) {
+            for (int index = 0; index < numColumns; index++) {
+                if (row[index] == null) {
+                    nullCounts[index]++;
+                }
+                block.add(index, row[index]);
+            }
+            block.endRow();
+            if (block.isFull()) {
+                dispatch(block);
+                block = new RowBlock(sink, numColumns, blockSize);
+            }
+        }
+        finish(table, block, attributeIndex, tableOffset, sample.size(), nullCounts);
+    }
+
+    /**
+     * Decides where the row just read goes in a reservoir sample, so that every row read so far is sampled with the
+     * same probability.
+     *
+     * @param seen       the number of rows read so far, including the current one
+     * @param sampleSize the number of rows sampled so far
+     * @return the slot of the sample the row replaces or is appended at, -1 if the row is not sampled
+     */
+    static int reservoirSlot(long seen, int sampleSize, long rowLimit, Random random) {
+        if (sampleSize < rowLimit) {
+            return sampleSize;
+        }
+        long candidate = random.nextLong(seen);
+        return candidate < rowLimit ? (int) candidate : -1;
+    }
+
+    /**
+     * Dispatches the last block of the table, which tells the writers to close its outputs, and records the sizes.
+     */
+    private void finish(RelationalInputWrapper table, RowBlock block, Attribute[] attributeIndex, int tableOffset, long tableSize, long[] nullCounts) throws Exception {
+        block.setLast();
+        dispatch(block);
+
+        for (int i = 0; i < nullCounts.length; i++) {
+            attributeIndex[tableOffset+i].addSize(tableSize);
+            attributeIndex[tableOffset+i].addNullCount(nullCounts[i]);
         }
         table.close();
     }
 
-    private BufferedWriter[] attachWriters(Path[] paths) throws IOException {
-        BufferedWriter[] writers = new BufferedWriter[paths.length];
-        for (int i = 0; i < paths.length; i++) {
-            writers[i] = Files.newBufferedWriter(paths[i]);
+    /**
+     * Hands the block to every writer that owns at least one of its columns. Blocks if a writer falls behind.
+     */
+    private void dispatch(RowBlock block) throws InterruptedException {
+        int writers = Math.min(writerQueues.size(), block.numberOfColumns());
+        for (int i = 0; i < writers; i++) {
+            writerQueues.get(i).put(block);
         }
-        return writers;
     }
 
-    private String escape(final String value) {
-        return value.replace('\n', '\0');
+    private MultiwayMergeSort[] attachSorters(int tableOffset, int numColumns) {
+        int activeColumns = 0;
+        for (int i = 0; i < numColumns; i++) {
+            if (activeAttributes[tableOffset + i]) {
+                activeColumns++;
+            }
+        }
+        // the active columns of a table share this runner's memory
+        long columnLimit = memoryLimit / Math.max(1, activeColumns);
+        MultiwayMergeSort[] sorters = new MultiwayMergeSort[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            if (!activeAttributes[tableOffset + i]) {
+                continue;
+            }
+            sorters[i] = new MultiwayMergeSort(columnLimit, attributeIndex[tableOffset + i], MultiwayMergeSort.initialCapacity(columnLimit, 1 << 16), budget, offHeap);
+        }
+        return sorters;
+    }
+
+    private BinaryValueWriter[] attachWriters(int tableOffset, Path[] paths) throws IOException {
+        BinaryValueWriter[] writers = new BinaryValueWriter[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            if (!activeAttributes[tableOffset + i]) {
+                continue;
+            }
+            writers[i] = new BinaryValueWriter(paths[i]);
+        }
+        return writers;
     }
 
-    private Path[] generatePaths(int tableOffset, int numColumns) {
+    private Path[] generatePaths(int tableOffset, int numColumns, int part) {
+        String suffix = part == 0 ? ".bin" : "_" + part + ".bin";
         Path[] paths = new Path[numColumns];
         for (int i = 0; i < numColumns; i++) {
-            File tempFile = new File(tempFolderPath + File.separator + "attribute_" + (tableOffset + i) + ".txt");
-            paths[i] = tempFile.toPath();
+            paths[i] = tempStorage.newPath("attribute_" + (tableOffset + i) + suffix);
         }
         return paths;
     }
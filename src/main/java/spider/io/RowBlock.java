@@ -0,0 +1,119 @@
+package spider.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A block of rows of one table part in columnar layout. The UTF-8 bytes of all values of a column are stored one after
+ * another in a single array, so that a {@link ColumnWriter} can write its columns without touching the others.
+ * <p>
+ * Blocks are limited in bytes as well as in rows, so that the blocks queued between parsing and writing stay small
+ * also for wide tables or long values. A cell takes 16 bytes for its start, its length and the initial value bytes,
+ * so wide tables get fewer rows per block, and a block is full once its values exceed the limit.
+ */
+public class RowBlock {
+
+    static final long MAX_BLOCK_BYTES = 1L << 22;
+
+    // marks the end of the ingestion for the column writers
+    public static final RowBlock END = new RowBlock(null, 0, 0);
+
+    private final TableSink sink;
+    private final byte[][] data;
+    private final int[] dataLength;
+    private final int[][] starts;
+    // the length of each value, -1 for null
+    private final int[][] lengths;
+    private final int capacity;
+    private long valueBytes = 0L;
+    private int rows;
+    private boolean last;
+
+    /**
+     * @param maxRows the number of rows the block holds at most, fewer if that many cells exceed the byte limit
+     */
+    public RowBlock(TableSink sink, int numColumns, int maxRows) {
+        this.sink = sink;
+        this.capacity = (int) Math.max(1L, Math.min(maxRows, MAX_BLOCK_BYTES / (16L * Math.max(1, numColumns))));
+        this.data = new byte[numColumns][];
+        this.dataLength = new int[numColumns];
+        this.starts = new int[numColumns][capacity];
+        this.lengths = new int[numColumns][capacity];
+        for (int column = 0; column < numColumns; column++) {
+            this.data[column] = new byte[capacity * 8];
+        }
+        this.rows = 0;
+    }
+
+    public void add(int column, String value) {
+        if (value == null) {
+            lengths[column][rows] = -1;
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            add(column, bytes, 0, bytes.length);
+        }
+    }
+
+    public void add(int column, byte[] bytes, int start, int length) {
+        int offset = dataLength[column];
+        if (data[column].length - offset < length) {
+            data[column] = Arrays.copyOf(data[column], Math.max(data[column].length * 2, offset + length));
+        }
+        System.arraycopy(bytes, start, data[column], offset, length);
+        starts[column][rows] = offset;
+        lengths[column][rows] = length;
+        dataLength[column] = offset + length;
+        valueBytes += length;
+    }
+
+    public void addNull(int column) {
+        lengths[column][rows] = -1;
+    }
+
+    /**
+     * Completes the current row. All columns of the row need to be set before.
+     */
+    public void endRow() {
+        rows++;
+    }
+
+    public boolean isFull() {
+        return rows == capacity || valueBytes >= MAX_BLOCK_BYTES;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int numberOfColumns() {
+        return data.length;
+    }
+
+    /**
+     * Marks this block as the last one of its table part, so that the writers close the outputs after writing it.
+     */
+    public void setLast() {
+        this.last = true;
+    }
+
+    /**
+     * Writes all non-null values of the column to the sink and closes the column if this is the last block.
+     */
+    void writeColumn(int column) throws IOException {
+        if (!sink.isActive(column)) {
+            return;
+        }
+        byte[] columnData = data[column];
+        int[] columnStarts = starts[column];
+        int[] columnLengths = lengths[column];
+        for (int row = 0; row < rows; row++) {
+            if (columnLengths[row] >= 0) {
+                sink.write(column, columnData, columnStarts[row], columnLengths[row]);
+            }
+        }
+        if (last) {
+            sink.close(column);
+        }
+    }
+}
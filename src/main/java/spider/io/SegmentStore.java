@@ -0,0 +1,136 @@
+package spider.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Packs the sorted attribute files into a fixed number of large segment files. An in-memory directory stores the
+ * segment, offset and length of every attribute. All readers of a segment share its channel through positional reads,
+ * so the number of open file descriptors equals the number of segments regardless of the number of attributes.
+ */
+public class SegmentStore implements Closeable {
+
+    private final Path[] paths;
+    private final FileChannel[] channels;
+    private final long[] segmentEnds;
+    // segments that are currently not written to, every segment has at most one writer
+    private final BlockingQueue<Integer> freeSegments;
+
+    private final int[] attributeSegments;
+    private final long[] attributeOffsets;
+    private final long[] attributeLengths;
+
+    public SegmentStore(TempStorage tempStorage, int numSegments, int numAttributes) throws IOException {
+        this.paths = new Path[numSegments];
+        this.channels = new FileChannel[numSegments];
+        this.segmentEnds = new long[numSegments];
+        this.freeSegments = new ArrayBlockingQueue<>(numSegments);
+        for (int i = 0; i < numSegments; i++) {
+            paths[i] = tempStorage.newPath("segment_" + i + ".bin");
+            channels[i] = FileChannel.open(paths[i], StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            freeSegments.add(i);
+        }
+        this.attributeSegments = new int[numAttributes];
+        this.attributeOffsets = new long[numAttributes];
+        this.attributeLengths = new long[numAttributes];
+    }
+
+    /**
+     * Returns a writer that appends the sorted values of the attribute to a segment. The segment is only reserved when
+     * the writer flushes its first bytes, which waits if all segments are in use. Closing the writer records the
+     * attribute in the directory and releases the segment.
+     *
+     * @param attributeId     the attribute whose values are written
+     * @param restartInterval the restart interval if the values are front coded, 0 otherwise
+     */
+    public BinaryValueWriter createWriter(int attributeId, int restartInterval) {
+        return new BinaryValueWriter(new SegmentOutputStream(attributeId), restartInterval);
+    }
+
+    /**
+     * @return a reader over the sorted values of the attribute, closing it leaves the segment open
+     */
+    public BinaryValueReader createReader(int attributeId) {
+        int segment = attributeSegments[attributeId];
+        return new BinaryValueReader(channels[segment], attributeOffsets[attributeId], attributeLengths[attributeId], false);
+    }
+
+    /**
+     * Closes and deletes all segments.
+     */
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < channels.length; i++) {
+            channels[i].close();
+            Files.deleteIfExists(paths[i]);
+        }
+    }
+
+    /**
+     * Appends to the end of a segment, which is reserved on the first write.
+     */
+    private class SegmentOutputStream extends OutputStream {
+
+        private final int attributeId;
+        // -1 until a segment is reserved
+        private int segment = -1;
+        private long start;
+        private long position;
+
+        SegmentOutputStream(int attributeId) {
+            this.attributeId = attributeId;
+        }
+
+        private void reserve() throws IOException {
+            try {
+                segment = freeSegments.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a free segment", e);
+            }
+            synchronized (SegmentStore.this) {
+                start = segmentEnds[segment];
+            }
+            position = start;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (segment < 0) {
+                reserve();
+            }
+            ByteBuffer source = ByteBuffer.wrap(bytes, offset, length);
+            while (source.hasRemaining()) {
+                position += channels[segment].write(source, position);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (segment < 0) {
+                // the attribute is recorded even without any bytes
+                reserve();
+            }
+            synchronized (SegmentStore.this) {
+                attributeSegments[attributeId] = segment;
+                attributeOffsets[attributeId] = start;
+                attributeLengths[attributeId] = position - start;
+                segmentEnds[segment] = position;
+            }
+            freeSegments.add(segment);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package spider.io;
+
+import spider.structures.Attribute;
+import spider.structures.HyperLogLog;
+import spider.structures.MultiwayMergeSort;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hands out the attributes to sort together with a memory grant. The grant of an attribute covers the memory needed to
+ * sort it without spilling, estimated from its distinct value sketch, and all running grants together stay below a
+ * global budget. Attributes are started largest first. If the largest pending attribute does not fit into the free
+ * budget, smaller attributes that fit are started instead, so that no thread idles. Once enough budget is free, the
+ * largest attribute starts with a reduced grant rather than waiting for all others.
+ * <p>
+ * Attributes that are sorted in value ranges by all threads at once are granted the whole budget, so they only start
+ * when no other sort runs and no other sort starts before they are finished.
+ */
+public class SortScheduler {
+
+    // grants below this size are not worth the overhead of tiny spill files
+    private static final long MIN_GRANT = 1L << 16;
+
+    private final List<Task> pending;
+    private final long minReducedGrant;
+    private long available;
+    private int running = 0;
+
+    public static class Task {
+        public final Attribute attribute;
+        public final long grant;
+        // sorted by all threads, see RangePartitionedSort
+        public final boolean parallel;
+
+        Task(Attribute attribute, long grant, boolean parallel) {
+            this.attribute = attribute;
+            this.grant = grant;
+            this.parallel = parallel;
+        }
+    }
+
+    /**
+     * @param attributes the attributes to sort
+     * @param budget     the number of bytes all running sorts together may hold
+     * @param numThreads the number of threads that sort concurrently
+     * @param parallelSortThreshold attributes with more values are sorted by all threads, 0 sorts every attribute with
+     *                              a single thread
+     */
+    public SortScheduler(List<Attribute> attributes, long budget, int numThreads, long parallelSortThreshold) {
+        this.available = budget;
+        this.minReducedGrant = Math.max(MIN_GRANT, budget / (4L * numThreads));
+        this.pending = new ArrayList<>(attributes.size());
+        for (Attribute attribute : attributes) {
+            if (parallelSortThreshold > 0 && attribute.getDistinctSketch().getValues() > parallelSortThreshold) {
+                pending.add(new Task(attribute, budget, true));
+            } else {
+                pending.add(new Task(attribute, Math.min(budget, Math.max(MIN_GRANT, estimateDemand(attribute))), false));
+            }
+        }
+        pending.sort(Comparator.comparingLong((Task task) -> task.grant).reversed());
+    }
+
+    /**
+     * @return the bytes the attribute occupies in the values map if all its distinct values are held at once
+     */
+    static long estimateDemand(Attribute attribute) {
+        HyperLogLog sketch = attribute.getDistinctSketch();
+        if (sketch.getValues() == 0L) {
+            return 0L;
+        }
+        long distinct = sketch.estimate();
+        double averageBytes = (double) sketch.getValueBytes() / sketch.getValues();
+        return distinct * MultiwayMergeSort.estimateBytes(averageBytes);
+    }
+
+    /**
+     * Waits until an attribute can be started.
+     *
+     * @return the next attribute with its grant or null if all attributes were handed out
+     */
+    public synchronized Task next() throws InterruptedException {
+        while (!pending.isEmpty()) {
+            Iterator<Task> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                if (task.grant <= available) {
+                    iterator.remove();
+                    return start(task);
+                }
+            }
+            // the reduced grant never exceeds the free budget, if nothing runs that is the whole budget
+            if (running == 0 || available >= minReducedGrant) {
+                // parallel sorts hold the whole budget, they start above once nothing runs
+                for (int i = 0; i < pending.size(); i++) {
+                    if (!pending.get(i).parallel) {
+                        Task largest = pending.remove(i);
+                        return start(new Task(largest.attribute, available, false));
+                    }
+                }
+            }
+            wait();
+        }
+        return null;
+    }
+
+    private Task start(Task task) {
+        available -= task.grant;
+        running++;
+        return task;
+    }
+
+    /**
+     * Returns the grant of a finished attribute to the budget.
+     */
+    public synchronized void release(Task task) {
+        available += task.grant;
+        running--;
+        notifyAll();
+    }
+}
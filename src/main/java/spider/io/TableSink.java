@@ -0,0 +1,67 @@
+package spider.io;
+
+import spider.structures.Attribute;
+import spider.structures.HyperLogLog;
+import spider.structures.MultiwayMergeSort;
+
+import java.io.IOException;
+
+/**
+ * The per-column outputs of one table or table part. Values either go to the raw attribute files or to sorters that
+ * deduplicate them during ingestion. Every column is only accessed by the {@link ColumnWriter} that owns it.
+ */
+public class TableSink {
+
+    private final BinaryValueWriter[] writers;
+    private final MultiwayMergeSort[] sorters;
+    private final Attribute[] attributes;
+    // distinct value sketches of this table part, merged into the attributes when the columns are closed
+    private final HyperLogLog[] sketches;
+
+    /**
+     * Exactly one of writers and sorters is expected to be set. Columns without writer or sorter are dropped.
+     *
+     * @param attributes the attributes of the columns
+     */
+    public TableSink(BinaryValueWriter[] writers, MultiwayMergeSort[] sorters, Attribute[] attributes) {
+        this.writers = writers;
+        this.sorters = sorters;
+        this.attributes = attributes;
+        this.sketches = new HyperLogLog[attributes.length];
+        for (int i = 0; i < sketches.length; i++) {
+            sketches[i] = new HyperLogLog();
+        }
+    }
+
+    public int numberOfColumns() {
+        return writers != null ? writers.length : sorters.length;
+    }
+
+    /**
+     * @return false if the values of the column are not needed
+     */
+    public boolean isActive(int column) {
+        return writers != null ? writers[column] != null : sorters[column] != null;
+    }
+
+    public void write(int column, byte[] bytes, int start, int length) throws IOException {
+        sketches[column].add(bytes, start, length);
+        if (writers != null) {
+            writers[column].writeValue(bytes, start, length);
+        } else {
+            sorters[column].add(bytes, start, length);
+        }
+    }
+
+    /**
+     * Closes the raw file of the column or hands its deduplicated runs over to the attribute.
+     */
+    public void close(int column) throws IOException {
+        attributes[column].mergeSketch(sketches[column]);
+        if (writers != null) {
+            writers[column].close();
+        } else {
+            sorters[column].flush();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package spider.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Distributes the temporary attribute, spill and segment files over several directories, e.g. on different disks, so
+ * that their aggregated bandwidth is used.
+ */
+public class TempStorage {
+
+    public enum Placement {
+        // every directory receives the same number of files
+        ROUND_ROBIN,
+        // directories receive files in proportion to their usable space at startup
+        SIZE_AWARE
+    }
+
+    private final Path[] directories;
+    private final long[] weights;
+    private final long totalWeight;
+    private final long[] current;
+
+    public TempStorage(String[] folders, Placement placement) {
+        if (folders == null || folders.length == 0) {
+            throw new IllegalArgumentException("At least one temp folder is required");
+        }
+        this.directories = new Path[folders.length];
+        this.weights = new long[folders.length];
+        this.current = new long[folders.length];
+        long total = 0L;
+        for (int i = 0; i < folders.length; i++) {
+            directories[i] = new File(folders[i]).toPath();
+            weights[i] = placement == Placement.SIZE_AWARE ? usableMegabytes(directories[i]) : 1L;
+            total += weights[i];
+        }
+        this.totalWeight = total;
+    }
+
+    public TempStorage(String folder) {
+        this(new String[]{folder}, Placement.ROUND_ROBIN);
+    }
+
+    private static long usableMegabytes(Path directory) {
+        try {
+            return Math.max(1L, Files.getFileStore(directory).getUsableSpace() >> 20);
+        } catch (IOException e) {
+            return 1L;
+        }
+    }
+
+    /**
+     * @param fileName the name of the file
+     * @return a path for the file inside the next directory
+     */
+    public Path newPath(String fileName) {
+        return nextDirectory().resolve(fileName);
+    }
+
+    /**
+     * Picks the next directory by smooth weighted round robin, which interleaves the directories instead of filling
+     * them one after another.
+     */
+    public synchronized Path nextDirectory() {
+        int best = 0;
+        for (int i = 0; i < directories.length; i++) {
+            current[i] += weights[i];
+            if (current[i] > current[best]) {
+                best = i;
+            }
+        }
+        current[best] -= totalWeight;
+        return directories[best];
+    }
+
+    public Path[] getDirectories() {
+        return directories;
+    }
+}
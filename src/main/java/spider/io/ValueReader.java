@@ -0,0 +1,33 @@
+package spider.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the entries of a sorted attribute file one after another. Every value is exposed as a slice of its UTF-8
+ * bytes, which stays valid until the next value is read.
+ */
+public interface ValueReader extends Closeable {
+
+    /**
+     * Reads the next value without decoding it.
+     *
+     * @return the length of the value or -1 if the end of the file is reached
+     */
+    int readValueBytes() throws IOException;
+
+    byte[] getBuffer();
+
+    int getValueStart();
+
+    /**
+     * Reads the number of occurrences stored after a value.
+     */
+    long readOccurrences() throws IOException;
+
+    /**
+     * Moves to the entry at the given offset, which has to be the start of an entry, in front coded files the one of
+     * a restart point.
+     */
+    void seek(long offset) throws IOException;
+}
@@ -0,0 +1,57 @@
+package spider.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * The sorted, distinct values of an attribute with their number of occurrences. A source starts positioned at the
+ * first value, {@link #next()} moves to the following one and returns it. The current value is also available as a
+ * slice of UTF-8 bytes, so that sources can be advanced and compared without decoding their values.
+ */
+public interface ValueSource extends Iterator<String> {
+
+    /**
+     * @return the current value or null if the source is exhausted
+     */
+    String getCurrentValue();
+
+    long getCurrentOccurrences();
+
+    /**
+     * Moves to the next value without decoding it.
+     */
+    void advance() throws IOException;
+
+    /**
+     * @return the array holding the bytes of the current value, which stay valid until the source moves on
+     */
+    byte[] getCurrentBytes();
+
+    int getCurrentStart();
+
+    /**
+     * @return the length of the current value in bytes or -1 if the source is exhausted
+     */
+    int getCurrentLength();
+
+    /**
+     * Compares the current value with the given bytes in the order of the sorted attribute files.
+     */
+    default int compareCurrent(byte[] value, int start, int length) {
+        int from = getCurrentStart();
+        return Arrays.compareUnsigned(getCurrentBytes(), from, from + getCurrentLength(), value, start, start + length);
+    }
+
+    /**
+     * Moves forward to the first value that is at least the target, stays at the current value if it already is.
+     * Sources without an index read all values in between.
+     */
+    default void seek(byte[] target, int start, int length) throws IOException {
+        while (hasNext() && compareCurrent(target, start, length) < 0) {
+            advance();
+        }
+    }
+
+    void close() throws IOException;
+}
@@ -73,7 +73,7 @@ public class Config {
             numOfFiles = k;
         this.tableNames = new String[numOfFiles];
         for (int i = 0; i < numOfFiles; i++) {
-            tableNames[i] = files[i].getName().replaceFirst("[.][^.]+$", "");
+            tableNames[i] = files[i].getName().replaceFirst("([.][^.]+)?[.]gz$|[.][^.]+$", "");
         }
     }
 
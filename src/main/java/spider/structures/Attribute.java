@@ -1,20 +1,22 @@
 package spider.structures;
 
+import spider.io.BinaryValueWriter;
+import spider.io.BlockIndex;
+import spider.io.MappedValueReader;
+import spider.io.MergedRuns;
 import spider.io.ReadPointer;
-import it.unimi.dsi.fastutil.ints.IntLinkedOpenHashSet;
-import it.unimi.dsi.fastutil.ints.IntSet;
+import spider.io.SegmentStore;
+import spider.io.TempStorage;
+import spider.io.ValueSource;
 import spider.utils.DuplicateHandling;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
- * An Attribute resembles a column. It manages its own dependent and referenced attributes.
+ * An Attribute resembles a column. Its pIND candidates are kept in the {@link CandidateStore}.
  */
 public class Attribute {
 
@@ -24,27 +26,40 @@ public class Attribute {
     private final String columnName;
     public int spilledFiles;
 
-    private Map<Integer, Long> referenced;
-    private IntSet dependent;
-
     private long size;
     private long uniqueSize;
     private long nullCount = 0L;
     private long violationsLeft;
 
-    private ReadPointer readPointer;
+    private ValueSource valueSource;
     private Path path;
-
-    private String currentValue;
-    private Long currentOccurrences;
-
-    public Attribute(int id, Path attributePath, String tableName, String columnName) {
+    // unsorted values and deduplicated sorted runs written during ingestion
+    private final List<Path> rawFiles;
+    private final List<Path> sortedRuns;
+    private final TempStorage tempStorage;
+    // restart interval of the front coded sorted files, 0 writes the values in full
+    private final int restartInterval;
+    // number of values between two entries of the block index of the sorted file, 0 writes no index
+    private final int indexInterval;
+    private final HyperLogLog distinctSketch = new HyperLogLog();
+    private int spillCounter = 0;
+    // if set, the sorted values are stored in a segment instead of the file at path
+    private SegmentStore segmentStore;
+    // if set, the sorted values are merged from these runs while they are read instead of being stored at path
+    private List<Path> mergedRuns;
+    private boolean memoryMapped = false;
+
+
+    public Attribute(int id, Path attributePath, String tableName, String columnName, TempStorage tempStorage, int restartInterval, int indexInterval) {
         this.id = id;
         this.path = attributePath;
         this.tableName = tableName;
         this.columnName = columnName;
-        this.dependent = new IntLinkedOpenHashSet(); //TODO: get rid of this
-        this.referenced = new HashMap<>();
+        this.rawFiles = new ArrayList<>();
+        this.sortedRuns = new ArrayList<>();
+        this.tempStorage = tempStorage;
+        this.restartInterval = restartInterval;
+        this.indexInterval = indexInterval;
     }
 
     public void calculateViolations(double threshold, DuplicateHandling duplicateHandling) {
@@ -56,7 +71,16 @@ public class Attribute {
     }
 
     public boolean equals(Attribute other) {
-        return currentValue.equals(other.currentValue);
+        return compareCurrentValue(other) == 0;
+    }
+
+    /**
+     * Compares the current values of both attributes in the order of the sorted attribute files. The values are
+     * compared as UTF-8 bytes, so they are never decoded during validation.
+     */
+    public int compareCurrentValue(Attribute other) {
+        ValueSource source = other.valueSource;
+        return valueSource.compareCurrent(source.getCurrentBytes(), source.getCurrentStart(), source.getCurrentLength());
     }
 
     public int compareBySize(Attribute other) {
@@ -74,116 +98,168 @@ public class Attribute {
     }
 
     /**
-     * Adds all dependent ids from the given Set to the internal dependent set.
+     * Moves to the next value of the value source
      *
-     * @param dependent ids of attributes that should be added
+     * @return True if there was a next value to load, false otherwise
      */
-    public void addDependent(final IntSet dependent) {
-        this.dependent.addAll(dependent);
+    public boolean nextValue() {
+        if (valueSource.hasNext()) {
+            try {
+                valueSource.advance();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return valueSource.hasNext();
+        }
+        return false;
     }
 
     /**
-     * Removes all dependent ids from the given Set from the internal dependent set.
+     * Moves forward to the first value that is at least the current value of the target attribute, using the block
+     * index of the sorted file if there is one. Stays at the current value if it already is.
      *
-     * @param dependent ids of attributes that should be removed
+     * @return True if there is such a value, false otherwise
      */
-    public void removeDependent(final int dependent) {
-        this.dependent.remove(dependent);
+    public boolean seek(Attribute target) {
+        ValueSource source = target.valueSource;
+        try {
+            valueSource.seek(source.getCurrentBytes(), source.getCurrentStart(), source.getCurrentLength());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return valueSource.hasNext();
     }
 
     /**
-     * Adds all referenced ids from the given Set to the internal referenced set.
+     * Closes the reader connected to the attribute and deletes its sorted file. A memory-mapped file that cannot be
+     * deleted while its mapping is alive is deleted when the JVM exits.
      *
-     * @param referenced ids of attributes that should be added
+     * @throws IOException if the reader fails to close
      */
-    public void addReferenced(final IntSet referenced) {
-        referenced.forEach(x -> this.referenced.put(x, violationsLeft));
+    public void close() throws IOException {
+        if (valueSource == null) {
+            // attributes outside of every candidate are never opened
+            return;
+        }
+        valueSource.close();
+        if (mergedRuns != null) {
+            for (Path run : mergedRuns) {
+                Files.delete(run);
+            }
+        } else if (segmentStore == null) {
+            try {
+                Files.delete(path);
+            } catch (IOException e) {
+                if (!memoryMapped) {
+                    throw e;
+                }
+                // the mapping is still held until it is garbage collected, which some platforms refuse to delete
+                path.toFile().deleteOnExit();
+            }
+            Files.deleteIfExists(BlockIndex.pathOf(path));
+        }
     }
 
     /**
-     * Removes all referenced ids from the given Set from the internal referenced set.
-     *
-     * @param referenced ids of attributes that should be removed
+     * @param memoryMapped whether the sorted file is mapped into memory, merged runs and segments are read as usual
      */
-    public void removeReferenced(final int referenced) {
-        this.referenced.remove(referenced);
+    public void open(boolean memoryMapped) throws IOException {
+        this.memoryMapped = memoryMapped && mergedRuns == null && segmentStore == null;
+        if (mergedRuns != null) {
+            this.valueSource = new MergedRuns(mergedRuns);
+        } else if (segmentStore == null) {
+            this.valueSource = memoryMapped
+                    ? new ReadPointer(new MappedValueReader(path), path, BlockIndex.read(BlockIndex.pathOf(path)))
+                    : new ReadPointer(path);
+        } else {
+            this.valueSource = new ReadPointer(segmentStore.createReader(id), null);
+        }
+    }
+
+    public void incNullCount() {
+        this.nullCount++;
     }
 
     /**
-     * Updates the internal variables currentValue and currentOccurrences
-     *
-     * @return True if there was a next value to load, false otherwise
+     * Adds the null count of a part of the table. Several ingestion threads may read parts of the same table.
      */
-    public boolean nextValue() {
-        if (readPointer.hasNext()) {
-            this.currentValue = readPointer.next();
-            if (readPointer.hasNext()) {
-                this.currentOccurrences = Long.valueOf(readPointer.next());
-                return true;
-            }
+    public synchronized void addNullCount(long nullCount) {
+        this.nullCount += nullCount;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return a writer for the sorted values, either to the attribute file or appending to a segment
+     */
+    public BinaryValueWriter createSortedWriter() throws IOException {
+        if (segmentStore == null) {
+            return new BinaryValueWriter(path, restartInterval, indexInterval);
         }
-        return false;
+        // segments are read without an index
+        return segmentStore.createWriter(id, restartInterval);
     }
 
     /**
-     * Updates the dependant and referenced sets using the attributes that share a value.
-     *
-     * @param attributes     Set of attribute ids, which share some value
-     * @param attributeIndex The index that stores all attributes
+     * @return a writer for a sorted run of this attribute, e.g. a spill file
      */
-    public void intersectReferenced(Set<Integer> attributes, final Attribute[] attributeIndex, DuplicateHandling duplicateHandling) {
-        Iterator<Integer> referencedIterator = referenced.keySet().iterator();
-        while (referencedIterator.hasNext()) {
-            final int ref = referencedIterator.next();
-            if (attributes.contains(ref)) {
-                continue;
-            }
+    public BinaryValueWriter createRunWriter(Path run) throws IOException {
+        return new BinaryValueWriter(run, restartInterval);
+    }
 
-            long updated_violations;
-            // v won't be null since we iterate the key set
-            if (duplicateHandling == DuplicateHandling.UNAWARE) {
-                updated_violations = referenced.compute(ref, (k, v) -> v - currentOccurrences);
-            } else {
-                updated_violations = referenced.compute(ref, (k, v) -> v - 1);
-            }
+    public int getRestartInterval() {
+        return restartInterval;
+    }
 
-            if (updated_violations < 0L) {
-                referencedIterator.remove();
-                attributeIndex[ref].removeDependent(id);
-            }
-        }
+    public void setSegmentStore(SegmentStore segmentStore) {
+        this.segmentStore = segmentStore;
     }
 
     /**
-     * An Attribute is considered as finished, if it is not referenced by any other and is not dependent on any
-     * other attribute. Since it is irrelevant for pIND discovery now, it can be removed from the attribute queue.
+     * Lets the attribute read its sorted values from a merge of the runs, so that the merged file is never written.
      */
-    public boolean isFinished() {
-        return referenced.isEmpty() && dependent.isEmpty();
+    public void setMergedRuns(List<Path> runs) {
+        this.mergedRuns = runs;
+    }
+
+    public List<Path> getMergedRuns() {
+        return mergedRuns;
     }
 
     /**
-     * Closes the reader connected to the attribute.
-     *
-     * @throws IOException if the reader fails to close
+     * Adds the distinct value sketch of a part of the table.
      */
-    public void close() throws IOException {
-        readPointer.close();
-        Files.delete(readPointer.path);
+    public synchronized void mergeSketch(HyperLogLog sketch) {
+        this.distinctSketch.merge(sketch);
     }
 
-    public void open() throws IOException {
-        this.readPointer = new ReadPointer(path);
-        this.currentValue = readPointer.getCurrentValue();
-        if (readPointer.hasNext()) this.currentOccurrences = Long.parseLong(readPointer.next());
+    public HyperLogLog getDistinctSketch() {
+        return distinctSketch;
     }
 
-    public void incNullCount() {
-        this.nullCount++;
+    public synchronized void addRawFile(Path rawFile) {
+        this.rawFiles.add(rawFile);
     }
 
-    public Path getPath() {
-        return path;
+    public List<Path> getRawFiles() {
+        return rawFiles;
+    }
+
+    public synchronized void addSortedRuns(Collection<Path> runs) {
+        this.sortedRuns.addAll(runs);
+    }
+
+    public List<Path> getSortedRuns() {
+        return sortedRuns;
+    }
+
+    /**
+     * @return a new, unique path for a spill file of this attribute
+     */
+    public synchronized Path nextSpillPath() {
+        return tempStorage.newPath(path.getFileName() + "#" + spillCounter++);
     }
 
     public int getId() {
@@ -198,14 +274,6 @@ public class Attribute {
         return spilledFiles;
     }
 
-    public Map<Integer, Long> getReferenced() {
-        return referenced;
-    }
-
-    public IntSet getDependent() {
-        return dependent;
-    }
-
     public String getTableName() {
         return tableName;
     }
@@ -226,19 +294,23 @@ public class Attribute {
         return violationsLeft;
     }
 
-    public ReadPointer getReadPointer() {
-        return readPointer;
+    public ValueSource getValueSource() {
+        return valueSource;
     }
 
     public String getCurrentValue() {
-        return currentValue;
+        return valueSource.getCurrentValue();
     }
 
-    public Long getCurrentOccurrences() {
-        return currentOccurrences;
+    public long getCurrentOccurrences() {
+        return valueSource.getCurrentOccurrences();
     }
 
     public void setSize(long tableSize) {
         this.size = tableSize;
     }
+
+    public synchronized void addSize(long partSize) {
+        this.size += partSize;
+    }
 }
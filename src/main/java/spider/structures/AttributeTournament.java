@@ -0,0 +1,114 @@
+package spider.structures;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A tournament tree over the open attributes ordered by their current values. Every inner node holds the attribute
+ * with the smallest value of its subtree, so all attributes sharing the smallest value are found by descending only
+ * into subtrees whose winner has that value. Attributes are advanced in place and only the path of their leaf is
+ * replayed, finished attributes are dropped from the tree.
+ */
+public class AttributeTournament {
+
+    private static final int NONE = -1;
+
+    private final Attribute[] attributes;
+    private final int leaves;
+    // node 1 is the root, the children of node i are 2i and 2i + 1, the leaves start at index leaves
+    private final int[] winners;
+    // the nodes left to descend into while collecting the minimum, reused for every value group
+    private final IntArrayList stack = new IntArrayList();
+    private int active;
+
+    public AttributeTournament(List<Attribute> attributes) {
+        this.attributes = attributes.toArray(new Attribute[0]);
+        this.leaves = Integer.highestOneBit(Math.max(1, this.attributes.length) * 2 - 1);
+        this.winners = new int[2 * leaves];
+        Arrays.fill(winners, NONE);
+        for (int i = 0; i < this.attributes.length; i++) {
+            winners[leaves + i] = i;
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            winners[node] = play(winners[2 * node], winners[2 * node + 1]);
+        }
+        this.active = this.attributes.length;
+    }
+
+    private int play(int a, int b) {
+        if (a == NONE) return b;
+        if (b == NONE) return a;
+        return attributes[b].compareCurrentValue(attributes[a]) < 0 ? b : a;
+    }
+
+    public boolean isEmpty() {
+        return active == 0;
+    }
+
+    /**
+     * @return the number of attributes still in the tree
+     */
+    public int size() {
+        return active;
+    }
+
+    public Attribute get(int leaf) {
+        return attributes[leaf];
+    }
+
+    /**
+     * Collects the leaves of all attributes whose current value is the smallest one.
+     *
+     * @param group cleared and filled with the leaves
+     */
+    public void collectMinimum(IntArrayList group) {
+        group.clear();
+        if (active == 0) {
+            return;
+        }
+        Attribute minimum = attributes[winners[1]];
+        stack.clear();
+        stack.add(1);
+        while (!stack.isEmpty()) {
+            int node = stack.popInt();
+            if (node >= leaves) {
+                group.add(winners[node]);
+                continue;
+            }
+            for (int child = 2 * node; child <= 2 * node + 1; child++) {
+                if (winners[child] != NONE && attributes[winners[child]].equals(minimum)) {
+                    stack.add(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the attribute with the smallest current value apart from the one at the given leaf, null if there is none
+     */
+    public Attribute minimumExcept(int leaf) {
+        int best = NONE;
+        for (int node = leaves + leaf; node > 1; node >>= 1) {
+            best = play(best, winners[node ^ 1]);
+        }
+        return best == NONE ? null : attributes[best];
+    }
+
+    /**
+     * Replays the leaf after its attribute moved to its next value, or drops it from the tree.
+     *
+     * @param keep false if the attribute is exhausted or finished
+     */
+    public void update(int leaf, boolean keep) {
+        int node = leaves + leaf;
+        if (!keep && winners[node] != NONE) {
+            winners[node] = NONE;
+            active--;
+        }
+        for (node >>= 1; node > 0; node >>= 1) {
+            winners[node] = play(winners[2 * node], winners[2 * node + 1]);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package spider.structures;
+
+import it.unimi.dsi.fastutil.ints.IntCollection;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.util.Arrays;
+
+/**
+ * Holds the pIND candidates of all attributes. The referenced and dependent attributes of an attribute are bit rows
+ * over the attribute ids, and the violations a candidate (dep, ref) may still take are a primitive long at [dep][ref].
+ * Rows are only allocated for attributes that take part in a candidate, and the violation rows only for dependent
+ * attributes that tolerate any violation at all, since otherwise the first violation removes the candidate anyway.
+ * <p>
+ * With co-occurrence counting, a value only touches the candidates within the group of attributes sharing it. Every
+ * dependent attribute sums the violations of all its values and every candidate the ones of the values it shares,
+ * the difference are the violations of the candidate. The candidates of an attribute are kept in a min-heap on the
+ * shared count, so the ones exceeding the budget are found at its top after every value.
+ */
+public class CandidateStore {
+
+    private final int words;
+    private final long[][] referenced;
+    private final long[][] dependent;
+    private final long[][] violationsLeft;
+    private final int[] referencedCount;
+    private final int[] dependentCount;
+    // null unless co-occurrences are counted
+    private final CoOccurrences[] coOccurrences;
+
+    public CandidateStore(int numAttributes, boolean countCoOccurrences) {
+        this.words = (numAttributes + 63) >>> 6;
+        this.referenced = new long[numAttributes][];
+        this.dependent = new long[numAttributes][];
+        this.violationsLeft = new long[numAttributes][];
+        this.referencedCount = new int[numAttributes];
+        this.dependentCount = new int[numAttributes];
+        this.coOccurrences = countCoOccurrences ? new CoOccurrences[numAttributes] : null;
+    }
+
+    /**
+     * Adds the given referenced ids to the candidates of the dependent attribute.
+     *
+     * @param violations the number of violations every new candidate may take
+     */
+    public void addReferenced(int dep, IntCollection refs, long violations) {
+        if (refs.isEmpty()) {
+            return;
+        }
+        if (referenced[dep] == null) {
+            referenced[dep] = new long[words];
+        }
+        if (coOccurrences != null) {
+            for (int ref : refs) {
+                if (set(referenced[dep], ref)) {
+                    referencedCount[dep]++;
+                }
+            }
+            coOccurrences[dep] = new CoOccurrences(referenced[dep], referencedCount[dep], violations, coOccurrences[dep]);
+            return;
+        }
+        if (violations > 0L && violationsLeft[dep] == null) {
+            violationsLeft[dep] = new long[referenced.length];
+        }
+        for (int ref : refs) {
+            if (set(referenced[dep], ref)) {
+                referencedCount[dep]++;
+            }
+            if (violationsLeft[dep] != null) {
+                violationsLeft[dep][ref] = violations;
+            }
+        }
+    }
+
+    public void addDependent(int ref, IntCollection deps) {
+        if (deps.isEmpty()) {
+            return;
+        }
+        if (dependent[ref] == null) {
+            dependent[ref] = new long[words];
+        }
+        for (int dep : deps) {
+            if (set(dependent[ref], dep)) {
+                dependentCount[ref]++;
+            }
+        }
+    }
+
+    public void removeReferenced(int dep, int ref) {
+        if (clear(referenced[dep], ref)) {
+            referencedCount[dep]--;
+            if (coOccurrences != null) {
+                coOccurrences[dep].remove(ref);
+            }
+        }
+    }
+
+    public void removeDependent(int ref, int dep) {
+        if (clear(dependent[ref], dep)) {
+            dependentCount[ref]--;
+        }
+    }
+
+    public void clearReferenced(int dep) {
+        if (referenced[dep] != null) {
+            Arrays.fill(referenced[dep], 0L);
+        }
+        referencedCount[dep] = 0;
+        if (coOccurrences != null) {
+            coOccurrences[dep] = null;
+        }
+    }
+
+    public void clearDependent(int ref) {
+        if (dependent[ref] != null) {
+            Arrays.fill(dependent[ref], 0L);
+        }
+        dependentCount[ref] = 0;
+    }
+
+    /**
+     * Charges every candidate of the dependent attribute whose referenced attribute does not share the current value.
+     * A candidate that runs out of violations is removed from both sides.
+     *
+     * @param attributes ids of the attributes sharing the current value
+     * @param violations the violations the current value costs
+     */
+    public void intersectReferenced(int dep, IntSet attributes, long violations) {
+        long[] row = referenced[dep];
+        if (referencedCount[dep] == 0) {
+            return;
+        }
+        if (coOccurrences != null) {
+            CoOccurrences counts = coOccurrences[dep];
+            for (int ref : attributes) {
+                counts.share(ref, violations);
+            }
+            counts.charged += violations;
+            while (counts.size > 0 && counts.violations(counts.heap[0]) > counts.budget) {
+                int ref = counts.refs[counts.heap[0]];
+                counts.remove(ref);
+                row[ref >>> 6] &= ~(1L << ref);
+                referencedCount[dep]--;
+                removeDependent(ref, dep);
+            }
+            return;
+        }
+        long[] left = violationsLeft[dep];
+        for (int word = 0; word < words; word++) {
+            long bits = row[word];
+            while (bits != 0L) {
+                int ref = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (attributes.contains(ref)) {
+                    continue;
+                }
+                if (left != null && (left[ref] -= violations) >= 0L) {
+                    continue;
+                }
+                row[word] &= ~(1L << ref);
+                referencedCount[dep]--;
+                removeDependent(ref, dep);
+            }
+        }
+    }
+
+    /**
+     * An attribute is finished, if it is not referenced by any other and is not dependent on any other attribute.
+     */
+    public boolean isFinished(int id) {
+        return referencedCount[id] == 0 && dependentCount[id] == 0;
+    }
+
+    public boolean hasReferenced(int dep) {
+        return referencedCount[dep] > 0;
+    }
+
+    /**
+     * @return the smallest referenced id of the dependent attribute that is at least from, -1 if there is none
+     */
+    public int nextReferenced(int dep, int from) {
+        long[] row = referenced[dep];
+        if (row == null || from >= referenced.length) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = row[word] & (-1L << from);
+        while (bits == 0L) {
+            if (++word == words) {
+                return -1;
+            }
+            bits = row[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    public long getViolationsLeft(int dep, int ref) {
+        if (coOccurrences != null) {
+            CoOccurrences counts = coOccurrences[dep];
+            return counts.budget - counts.violations(Arrays.binarySearch(counts.refs, ref));
+        }
+        return violationsLeft[dep] == null ? 0L : violationsLeft[dep][ref];
+    }
+
+    private static boolean set(long[] row, int index) {
+        long mask = 1L << index;
+        if ((row[index >>> 6] & mask) != 0L) {
+            return false;
+        }
+        row[index >>> 6] |= mask;
+        return true;
+    }
+
+    private static boolean clear(long[] row, int index) {
+        if (row == null || (row[index >>> 6] & (1L << index)) == 0L) {
+            return false;
+        }
+        row[index >>> 6] &= ~(1L << index);
+        return true;
+    }
+
+    /**
+     * The shared violations of the candidates of one dependent attribute. The referenced ids are sorted, so a slot is
+     * found by binary search, and the heap orders the slots of the live candidates by their shared count.
+     */
+    private static class CoOccurrences {
+
+        final int[] refs;
+        final long[] shared;
+        final int[] heap;
+        // heap index of every slot, -1 once the candidate is removed
+        final int[] position;
+        final long budget;
+        int size;
+        long charged;
+
+        CoOccurrences(long[] row, int count, long budget, CoOccurrences previous) {
+            this.refs = new int[count];
+            this.shared = new long[count];
+            this.heap = new int[count];
+            this.position = new int[count];
+            this.budget = budget;
+            for (int word = 0, slot = 0; word < row.length; word++) {
+                for (long bits = row[word]; bits != 0L; bits &= bits - 1) {
+                    refs[slot++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                }
+            }
+            if (previous != null) {
+                this.charged = previous.charged;
+                for (int slot = 0; slot < count; slot++) {
+                    int old = Arrays.binarySearch(previous.refs, refs[slot]);
+                    // new candidates count as sharing every value seen so far
+                    shared[slot] = old >= 0 && previous.position[old] >= 0 ? previous.shared[old] : charged;
+                }
+            }
+            for (int slot = 0; slot < count; slot++) {
+                heap[slot] = slot;
+                position[slot] = slot;
+            }
+            this.size = count;
+            for (int index = size / 2 - 1; index >= 0; index--) {
+                siftDown(index);
+            }
+        }
+
+        long violations(int slot) {
+            return charged - shared[slot];
+        }
+
+        void share(int ref, long violations) {
+            int slot = Arrays.binarySearch(refs, ref);
+            if (slot >= 0 && position[slot] >= 0) {
+                shared[slot] += violations;
+                siftDown(position[slot]);
+            }
+        }
+
+        void remove(int ref) {
+            int slot = Arrays.binarySearch(refs, ref);
+            if (slot < 0 || position[slot] < 0) {
+                return;
+            }
+            int index = position[slot];
+            position[slot] = -1;
+            if (index == --size) {
+                return;
+            }
+            int moved = heap[size];
+            heap[index] = moved;
+            position[moved] = index;
+            siftDown(index);
+            siftUp(position[moved]);
+        }
+
+        private void siftDown(int index) {
+            int slot = heap[index];
+            while (2 * index + 1 < size) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && shared[heap[child + 1]] < shared[heap[child]]) {
+                    child++;
+                }
+                if (shared[heap[child]] >= shared[slot]) {
+                    break;
+                }
+                heap[index] = heap[child];
+                position[heap[index]] = index;
+                index = child;
+            }
+            heap[index] = slot;
+            position[slot] = index;
+        }
+
+        private void siftUp(int index) {
+            int slot = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (shared[heap[parent]] <= shared[slot]) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                position[heap[index]] = index;
+                index = parent;
+            }
+            heap[index] = slot;
+            position[slot] = index;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package spider.structures;
+
+import spider.io.BinaryValueWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the values in a HashMap of Strings.
+ */
+class HeapValueCounter implements ValueCounter {
+
+    private final Map<String, Long> values;
+    // estimated heap bytes held by the values map
+    private long bytesHeld = 0L;
+
+    HeapValueCounter(int initialCapacity) {
+        this.values = new HashMap<>((int) (initialCapacity*1.05));
+    }
+
+    @Override
+    public boolean add(String value) {
+        if (1L == this.values.compute(value, (k, v) -> v == null ? 1L : v+1L)) {
+            this.bytesHeld += estimateBytes(value);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(byte[] bytes, int start, int length) {
+        return add(new String(bytes, start, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Estimates the heap occupied by a value and its map entry, assuming compact strings.
+     */
+    static long estimateBytes(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) > 0xFF) {
+                // the string is stored with two bytes per char
+                length = 2 * length;
+                break;
+            }
+        }
+        return MultiwayMergeSort.ENTRY_OVERHEAD + ((length + 7) & ~7);
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public long bytesHeld() {
+        return bytesHeld;
+    }
+
+    /**
+     * The map grows on demand, so the sort spills it by its estimated bytes instead.
+     */
+    @Override
+    public boolean isFull() {
+        return false;
+    }
+
+    @Override
+    public void setMemoryLimit(long memoryLimit) {
+    }
+
+    @Override
+    public void write(BinaryValueWriter writer) throws IOException {
+        byte[][] keys = new byte[values.size()][];
+        long[] counts = new long[values.size()];
+        int[] order = new int[values.size()];
+        int index = 0;
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            keys[index] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            counts[index] = entry.getValue();
+            order[index] = index;
+            index++;
+        }
+        RadixSorter.sort(order, new RadixSorter.Keys() {
+            @Override
+            public int length(int key) {
+                return keys[key].length;
+            }
+
+            @Override
+            public int byteAt(int key, int depth) {
+                return keys[key][depth] & 0xFF;
+            }
+        });
+        for (int key : order) {
+            writer.writeEntry(keys[key], 0, keys[key].length, counts[key]);
+        }
+        writer.close();
+    }
+
+    @Override
+    public void clear() {
+        values.clear();
+        bytesHeld = 0L;
+    }
+}
@@ -0,0 +1,83 @@
+package spider.structures;
+
+/**
+ * A small HyperLogLog sketch that estimates the number of distinct values of an attribute while it is ingested. It
+ * also counts the values and their bytes, so that the memory a sort of the attribute needs can be estimated up front.
+ */
+public class HyperLogLog {
+
+    private static final int PRECISION = 11;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private final byte[] registers = new byte[REGISTERS];
+    private long values = 0L;
+    private long valueBytes = 0L;
+
+    public void add(byte[] bytes, int start, int length) {
+        long hash = hash(bytes, start, length);
+        int register = (int) (hash >>> (64 - PRECISION));
+        // position of the first set bit in the remaining bits, the lowest bit guarantees termination
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (registers[register] < rank) {
+            registers[register] = rank;
+        }
+        values++;
+        valueBytes += length;
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] < other.registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+        values += other.values;
+        valueBytes += other.valueBytes;
+    }
+
+    /**
+     * @return the estimated number of distinct values, never more than the number of values
+     */
+    public long estimate() {
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1.0 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // linear counting is more accurate for small cardinalities
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.min(values, Math.round(estimate));
+    }
+
+    public long getValues() {
+        return values;
+    }
+
+    public long getValueBytes() {
+        return valueBytes;
+    }
+
+    /**
+     * FNV-1a over the bytes followed by the MurmurHash3 finalizer to spread the bits.
+     */
+    static long hash(byte[] bytes, int start, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < start + length; i++) {
+            hash ^= bytes[i];
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,154 @@
+package spider.structures;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The heap memory the sorts may use together. The budget is a percentage of the maximum heap minus the heap that was
+ * live after the last garbage collection when the budget was created, so no full collection has to be forced.
+ * Additionally, the budget listens for collections after which the heap pools are still above the percentage. Sorts
+ * poll this pressure every few inserted values and spill early, which lowers the heap usage regardless of how far the
+ * size estimates are off.
+ * <p>
+ * Direct memory, e.g. the arenas of off-heap tables, is not visible in the heap pools. It has a limit of its own, the
+ * same percentage of the maximum direct memory minus the direct memory already in use, and is reserved explicitly.
+ */
+public class MemoryBudget implements NotificationListener, AutoCloseable {
+
+    // the smallest budget, so that sorts make progress even if the heap is almost full
+    private static final long MIN_LIMIT = 1L << 20;
+
+    private final long limit;
+    private final long directLimit;
+    private final AtomicLong directReserved = new AtomicLong();
+    private final int checkFrequency;
+    private volatile long pressure = 0L;
+
+    private final List<MemoryPoolMXBean> watchedPools = new ArrayList<>();
+    private final List<Long> previousThresholds = new ArrayList<>();
+
+    /**
+     * @param maxMemoryUsagePercentage the percentage of the maximum heap the whole process should stay below
+     * @param checkFrequency           the number of inserted values after which a sort checks for memory pressure
+     */
+    public MemoryBudget(int maxMemoryUsagePercentage, int checkFrequency) {
+        this.checkFrequency = Math.max(1, checkFrequency);
+        double fraction = Math.min(100, Math.max(1, maxMemoryUsagePercentage)) / 100.0;
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        this.limit = Math.max(MIN_LIMIT, (long) (maxHeap * fraction) - liveHeap());
+        this.directLimit = Math.max(MIN_LIMIT, (long) (maxDirectMemory() * fraction) - usedDirectMemory());
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long poolMax = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && poolMax > 0L) {
+                previousThresholds.add(pool.getCollectionUsageThreshold());
+                pool.setCollectionUsageThreshold((long) (poolMax * fraction));
+                watchedPools.add(pool);
+            }
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    }
+
+    /**
+     * @return the heap that was occupied after the last collection of each heap pool
+     */
+    private static long liveHeap() {
+        long live = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            MemoryUsage usage = pool.getCollectionUsage();
+            live += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+        }
+        return live;
+    }
+
+    /**
+     * @return the value of -XX:MaxDirectMemorySize, which defaults to the maximum heap
+     */
+    private static long maxDirectMemory() {
+        try {
+            HotSpotDiagnosticMXBean diagnostics = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            long configured = Long.parseLong(diagnostics.getVMOption("MaxDirectMemorySize").getValue());
+            if (configured > 0L) {
+                return configured;
+            }
+        } catch (RuntimeException ignored) {
+            // not a HotSpot VM
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    private static long usedDirectMemory() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0L;
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            pressure++;
+        }
+    }
+
+    /**
+     * @return the number of bytes all sorts together may hold
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Records direct memory that is about to be allocated. The memory is reserved in any case, so that it can be
+     * released in the same way.
+     *
+     * @return false if the reserved direct memory exceeds its limit now, the caller should free some soon
+     */
+    public boolean reserveDirect(long bytes) {
+        return directReserved.addAndGet(bytes) <= directLimit;
+    }
+
+    public void releaseDirect(long bytes) {
+        directReserved.addAndGet(-bytes);
+    }
+
+    public int getCheckFrequency() {
+        return checkFrequency;
+    }
+
+    /**
+     * @return a counter that increases whenever the heap is above the budget after a collection
+     */
+    public long getPressure() {
+        return pressure;
+    }
+
+    @Override
+    public void close() {
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+        } catch (ListenerNotFoundException ignored) {
+        }
+        for (int i = 0; i < watchedPools.size(); i++) {
+            watchedPools.get(i).setCollectionUsageThreshold(previousThresholds.get(i));
+        }
+    }
+}
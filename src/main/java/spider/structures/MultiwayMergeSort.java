@@ -1,103 +1,303 @@
 package spider.structures;
 
+import spider.io.BinaryValueReader;
+import spider.io.BinaryValueWriter;
 import spider.io.Merger;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 public class MultiwayMergeSort {
 
+    // String (24), HashMap.Node (32), boxed count (16), array header of the value (16) and the table slot (~11)
+    static final long ENTRY_OVERHEAD = 99L;
+
     private final Path origin;
-    private final Map<String, Long> values;
+    private ValueCounter values;
+    // the second buffer that is written in the background while values are counted into the first one
+    private ValueCounter spare;
+    private SpillWriter spillWriter;
     private final List<Path> spilledFiles;
     //private final Logger logger;
     private final Attribute attribute;
-    private final int maxMapSize;
-    private int valuesSinceLastSpill;
+    private long memoryLimit;
+    private final boolean offHeap;
+    private final int initialCapacity;
+    private final boolean asyncSpill;
+    private final int maxFanIn;
+    private final MemoryBudget budget;
+    private int valuesSinceLastCheck;
+    private long seenPressure;
+    private int runCount = 0;
+
+    /**
+     * @param memoryLimit     the number of bytes the counted values may occupy before they are spilled
+     * @param initialCapacity the expected number of distinct values held at once
+     * @param budget          the shared budget that signals memory pressure
+     * @param offHeap         whether the values are counted in an off-heap table instead of a HashMap
+     */
+    public MultiwayMergeSort(long memoryLimit, Attribute attribute, int initialCapacity, MemoryBudget budget, boolean offHeap) {
+        this(memoryLimit, attribute, initialCapacity, budget, offHeap, false, Merger.DEFAULT_MAX_FAN_IN);
+    }
 
-    public MultiwayMergeSort(int maxMemory, Attribute attribute, int stringLimit) {
-        this.values = new HashMap<>((int) (stringLimit*1.05));
+    /**
+     * @param asyncSpill whether full buffers are written by a background thread while counting continues into a second
+     *                   buffer, both buffers together stay within the memory limit once the first buffer spilled
+     * @param maxFanIn   the maximum number of runs merged at once
+     */
+    public MultiwayMergeSort(long memoryLimit, Attribute attribute, int initialCapacity, MemoryBudget budget, boolean offHeap, boolean asyncSpill, int maxFanIn) {
+        this.offHeap = offHeap;
+        // with background spilling, each of the two buffers is sized for half of the limit
+        this.initialCapacity = asyncSpill ? Math.max(1, initialCapacity / 2) : initialCapacity;
+        this.asyncSpill = asyncSpill;
+        this.maxFanIn = maxFanIn;
+        this.memoryLimit = memoryLimit;
+        this.budget = budget;
+        this.values = createCounter();
         this.attribute = attribute;
         this.spilledFiles = new ArrayList<>();
-        this.valuesSinceLastSpill = 0;
+        this.valuesSinceLastCheck = 0;
         this.origin = attribute.getPath();
         //this.logger = LoggerFactory.getLogger(MultiwayMergeSort.class);
-        this.maxMapSize = maxMemory;
+        this.seenPressure = budget.getPressure();
     }
 
     public void sort() throws IOException {
+        this.sort(0);
+    }
+
+    /**
+     * Sorts the attribute. If the values spill into at most maxLazyRuns runs, the runs are handed to the attribute,
+     * which merges them while it is validated, so the merged file is neither written nor read again. The number of
+     * distinct values is not known then, so lazy runs only suit violations that count all values.
+     */
+    public void sort(int maxLazyRuns) throws IOException {
         //logger.debug("Starting sort for: " + attribute.getId());
         long sTime = System.currentTimeMillis();
 
         // one file is created when merging
         attribute.spilledFiles = 1;
 
-        this.writeSpillFiles();
-        if (this.spilledFiles.isEmpty()) {
-            attribute.setUniqueSize(this.values.size());
-            this.write(origin);
-        } else {
-            if (!this.values.isEmpty()) {
-                this.writeSpillFile();
+        try {
+            // runs that were already deduplicated during ingestion only need to be merged
+            if (this.collect(attribute.getRawFiles(), attribute.getSortedRuns())) {
+                attribute.setUniqueSize(this.values.size());
+                this.write(attribute.createSortedWriter());
+            } else if (this.spilledFiles.size() <= maxLazyRuns) {
+                attribute.spilledFiles += spilledFiles.size();
+                attribute.setMergedRuns(new ArrayList<>(this.spilledFiles));
+                this.spilledFiles.clear();
+            } else {
+                attribute.setUniqueSize(this.merge(attribute::createSortedWriter));
+                attribute.spilledFiles += spilledFiles.size();
+                this.removeSpillFiles();
+            }
+        } finally {
+            this.releaseCounters();
+        }
+
+        //logger.debug("Finished sort for: " + attribute.getId() + ". Took: " + (System.currentTimeMillis() - sTime));
+    }
+
+    /**
+     * Sorts the values of the raw files and merges them with the sorted runs. The raw files and the runs are deleted.
+     *
+     * @param output creates the writer of the sorted values, it is only called right before the values in memory or
+     *               the last merge pass are written
+     * @return the number of distinct values written
+     */
+    long sort(List<Path> rawFiles, List<Path> sortedRuns, Merger.OutputFactory output) throws IOException {
+        long uniqueSize;
+        try {
+            if (this.collect(rawFiles, sortedRuns)) {
+                uniqueSize = this.values.size();
+                this.write(output.create());
+            } else {
+                uniqueSize = this.merge(output);
             }
-            Merger spilledMerger = new Merger();
-            spilledMerger.merge(this.spilledFiles, this.origin, attribute);
+        } finally {
+            this.releaseCounters();
         }
 
-        attribute.spilledFiles += spilledFiles.size();
+        this.runCount = spilledFiles.size();
         this.removeSpillFiles();
+        return uniqueSize;
+    }
 
-        //logger.debug("Finished sort for: " + attribute.getId() + ". Took: " + (System.currentTimeMillis() - sTime));
+    /**
+     * Counts the values of the raw files and deletes them. If the values do not fit into memory or there are sorted
+     * runs, the remaining values are spilled as well.
+     *
+     * @return true if all values are held in memory, false if they are in the spilled runs
+     */
+    private boolean collect(List<Path> rawFiles, List<Path> sortedRuns) throws IOException {
+        this.spilledFiles.addAll(sortedRuns);
+        for (Path rawFile : rawFiles) {
+            this.writeSpillFiles(rawFile);
+            Files.delete(rawFile);
+        }
+        if (this.spilledFiles.isEmpty()) {
+            return true;
+        }
+        if (this.values.size() > 0) {
+            this.writeSpillFile();
+        }
+        this.finishSpilling();
+        return false;
     }
 
-    private void writeSpillFiles() throws IOException {
-        BufferedReader reader = Files.newBufferedReader(this.origin);
+    private long merge(Merger.OutputFactory output) throws IOException {
+        // the values are written, so their memory is available for the read buffers of the runs
+        Merger spilledMerger = new Merger(Merger.fanIn(this.memoryLimit, this.maxFanIn), attribute::nextSpillPath, attribute.getRestartInterval());
+        return spilledMerger.merge(this.spilledFiles, output);
+    }
 
-        String line;
-        while ((line = reader.readLine()) != null) {
-            if (1L == this.values.compute(line, (k, v) -> v == null ? 1L : v+1L)) {
-                this.maybeWriteSpillFile();
-            }
+    /**
+     * @return the number of runs the last sort merged
+     */
+    int getRunCount() {
+        return runCount;
+    }
+
+    private void writeSpillFiles(Path rawFile) throws IOException {
+        BinaryValueReader reader = new BinaryValueReader(rawFile);
+
+        int length;
+        while ((length = reader.readValueBytes()) >= 0) {
+            this.add(reader.getBuffer(), reader.getValueStart(), length);
         }
 
         reader.close();
     }
 
+    /**
+     * Counts a single value and spills the collected values once the map exceeds its limit.
+     *
+     * @param value the value to count
+     */
+    public void add(String value) throws IOException {
+        if (this.values.add(value)) {
+            this.maybeWriteSpillFile();
+        }
+    }
+
+    /**
+     * Counts a single value given by its UTF-8 bytes.
+     */
+    public void add(byte[] bytes, int start, int length) throws IOException {
+        if (this.values.add(bytes, start, length)) {
+            this.maybeWriteSpillFile();
+        }
+    }
+
+    /**
+     * Writes the remaining counted values as a sorted run and hands all runs over to the attribute. This is used
+     * when values are deduplicated during ingestion, so that the sort phase only needs to merge the runs.
+     */
+    public void flush() throws IOException {
+        try {
+            if (this.values.size() > 0) {
+                this.writeSpillFile();
+            }
+            this.finishSpilling();
+        } finally {
+            this.releaseCounters();
+        }
+        attribute.addSortedRuns(this.spilledFiles);
+        this.spilledFiles.clear();
+    }
+
+
+    /**
+     * @return the capacity of the values map that fits into the memory limit, at most the number of values
+     */
+    public static int initialCapacity(long memoryLimit, long numberOfValues) {
+        return (int) Math.max(1L, Math.min(numberOfValues, memoryLimit / (ENTRY_OVERHEAD + 8L)));
+    }
+
+    /**
+     * @return the estimated heap bytes of a value with the given average length and its map entry
+     */
+    public static long estimateBytes(double valueLength) {
+        return ENTRY_OVERHEAD + (((long) Math.ceil(valueLength) + 7) & ~7);
+    }
 
     private void maybeWriteSpillFile() throws IOException {
-        ++this.valuesSinceLastSpill;
-        if (this.valuesSinceLastSpill > this.maxMapSize) {
-            this.valuesSinceLastSpill = 0;
+        if (this.values.isFull() || this.values.bytesHeld() > this.memoryLimit) {
             this.writeSpillFile();
+        } else if (++this.valuesSinceLastCheck >= budget.getCheckFrequency()) {
+            this.valuesSinceLastCheck = 0;
+            long pressure = budget.getPressure();
+            if (pressure != this.seenPressure) {
+                this.seenPressure = pressure;
+                // the heap is still too full after a collection, sorts that hold a noticeable share spill
+                if (this.values.bytesHeld() > this.memoryLimit / 8) {
+                    this.writeSpillFile();
+                }
+            }
         }
+    }
 
+    private ValueCounter createCounter() {
+        return offHeap ? new OffHeapValueTable(initialCapacity, memoryLimit, budget) : new HeapValueCounter(initialCapacity);
     }
 
     private void writeSpillFile() throws IOException {
         //logger.info("Spilling Attribute " + this.origin + "#" + this.spilledFiles.size());
-        Path target = Paths.get(this.origin + "#" + this.spilledFiles.size());
-        this.write(target);
+        Path target = attribute.nextSpillPath();
         this.spilledFiles.add(target);
-        this.values.clear();
+        if (!asyncSpill) {
+            this.write(attribute.createRunWriter(target));
+            this.values.clear();
+            return;
+        }
+        if (this.spillWriter == null) {
+            // values that fit into the full limit never spill, from the first spill on the limit is split between two buffers
+            this.memoryLimit /= 2;
+            this.values.setMemoryLimit(this.memoryLimit);
+            this.spillWriter = new SpillWriter("spill-" + attribute.getId());
+            this.spillWriter.start();
+            this.spare = createCounter();
+            if (this.values.bytesHeld() > this.memoryLimit) {
+                // the first buffer outgrew its half, so it is written before counting goes on
+                this.write(attribute.createRunWriter(target));
+                this.values.clear();
+                return;
+            }
+        }
+        // blocks while the spare buffer is still written, afterwards it is empty
+        this.spillWriter.submit(this.values, attribute.createRunWriter(target));
+        ValueCounter full = this.values;
+        this.values = this.spare;
+        this.spare = full;
     }
 
-    private void write(Path path) throws IOException {
-        BufferedWriter writer = Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    /**
+     * Waits until all spill files are written and stops the background writer.
+     */
+    private void finishSpilling() throws IOException {
+        if (this.spillWriter != null) {
+            this.spillWriter.finish();
+            this.spillWriter = null;
+            this.spare.release();
+            this.spare = null;
+        }
+    }
 
-        for (String key : values.keySet().stream().sorted().toList()) {
-            writer.write(key);
-            writer.newLine();
-            writer.write(values.get(key).toString());
-            writer.newLine();
+    /**
+     * Returns the memory the counters reserved outside of the heap once the sort does not count values anymore.
+     */
+    private void releaseCounters() {
+        this.values.release();
+        if (this.spare != null) {
+            this.spare.release();
         }
-        writer.flush();
-        writer.close();
+    }
+
+    private void write(BinaryValueWriter writer) throws IOException {
+        values.write(writer);
     }
 
     private void removeSpillFiles() {
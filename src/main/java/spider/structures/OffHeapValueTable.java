@@ -0,0 +1,275 @@
+package spider.structures;
+
+import spider.io.BinaryValueWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts values in an open-addressing hash table. The value bytes live in an off-heap arena of direct pages, every key
+ * is stored as its length followed by its UTF-8 bytes. The table itself consists of primitive arrays holding the arena
+ * address, the hash and the count of each key, so no object is allocated per distinct value. The table only grows
+ * while it fits into the memory limit together with the arena, otherwise it reports itself full so that it is spilled.
+ * Clearing it keeps the first page for the next run and shrinks the table back to its initial capacity.
+ * <p>
+ * The pages are direct memory, which the heap based limits do not see, so they are reserved in the direct memory of
+ * the budget as well. A page beyond that limit is still allocated for the value at hand, but marks the table full.
+ * {@link #release()} returns the pages once the table is not used anymore.
+ */
+class OffHeapValueTable implements ValueCounter {
+
+    private static final int PAGE_SIZE = 1 << 20;
+    private static final int MIN_PAGE_SIZE = 1 << 12;
+    private static final long EMPTY = -1L;
+    private static final float LOAD_FACTOR = 0.7f;
+    // address, hash and count per slot
+    private static final int SLOT_BYTES = 20;
+
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    // pages are smaller for small limits, so that a single page does not exhaust the limit
+    private final int pageSize;
+    private int currentPage = -1;
+    private int pagePosition = 0;
+    // capacity of all allocated pages
+    private long pageBytes = 0L;
+
+    private final int initialCapacity;
+    private final MemoryBudget budget;
+    private long memoryLimit;
+    // set once the table would have to grow beyond the memory limit
+    private boolean full = false;
+
+    private long[] addresses;
+    private int[] hashes;
+    private long[] counts;
+    private int mask;
+    private int size = 0;
+    private int growThreshold;
+
+    private byte[] scratch = new byte[256];
+
+    /**
+     * @param memoryLimit the number of bytes the table and the arena may occupy together
+     * @param budget      the budget the direct memory of the arena is reserved in
+     */
+    OffHeapValueTable(int initialCapacity, long memoryLimit, MemoryBudget budget) {
+        this.budget = budget;
+        this.initialCapacity = Integer.highestOneBit(Math.max(16, (int) Math.min(1 << 30, (long) (initialCapacity / LOAD_FACTOR))) * 2 - 1);
+        this.memoryLimit = memoryLimit;
+        this.pageSize = (int) Math.max(MIN_PAGE_SIZE, Math.min(PAGE_SIZE, memoryLimit / 16));
+        allocateTable(this.initialCapacity);
+    }
+
+    private void allocateTable(int capacity) {
+        this.addresses = new long[capacity];
+        Arrays.fill(addresses, EMPTY);
+        this.hashes = new int[capacity];
+        this.counts = new long[capacity];
+        this.mask = capacity - 1;
+        this.growThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    @Override
+    public boolean add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return add(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public boolean add(byte[] bytes, int start, int length) {
+        int hash = (int) HyperLogLog.hash(bytes, start, length);
+        int slot = hash & mask;
+        while (addresses[slot] != EMPTY) {
+            if (hashes[slot] == hash && keyEquals(addresses[slot], bytes, start, length)) {
+                counts[slot]++;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        addresses[slot] = store(bytes, start, length);
+        hashes[slot] = hash;
+        counts[slot] = 1L;
+        if (++size > growThreshold) {
+            if (pageBytes + (long) addresses.length * 2 * SLOT_BYTES <= memoryLimit) {
+                grow();
+            } else {
+                full = true;
+            }
+        }
+        return true;
+    }
+
+    private boolean keyEquals(long address, byte[] bytes, int start, int length) {
+        ByteBuffer page = pages.get((int) (address >>> 32));
+        int offset = (int) address;
+        if (page.getInt(offset) != length) {
+            return false;
+        }
+        offset += 4;
+        for (int i = 0; i < length; i++) {
+            if (page.get(offset + i) != bytes[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readKey(ByteBuffer page, int offset, int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        page.get(offset + 4, scratch, 0, length);
+        return scratch;
+    }
+
+    /**
+     * Appends the key to the arena.
+     *
+     * @return the page index in the upper and the offset in the lower 32 bits
+     */
+    private long store(byte[] bytes, int start, int length) {
+        int needed = length + 4;
+        if (currentPage < 0 || pages.get(currentPage).capacity() - pagePosition < needed) {
+            currentPage++;
+            pagePosition = 0;
+            if (currentPage == pages.size()) {
+                pages.add(allocatePage(Math.max(pageSize, needed)));
+            } else if (pages.get(currentPage).capacity() < needed) {
+                releasePage(pages.get(currentPage));
+                pages.set(currentPage, allocatePage(needed));
+            }
+        }
+        ByteBuffer page = pages.get(currentPage);
+        page.putInt(pagePosition, length);
+        page.put(pagePosition + 4, bytes, start, length);
+        long address = ((long) currentPage << 32) | pagePosition;
+        pagePosition += needed;
+        return address;
+    }
+
+    private ByteBuffer allocatePage(int capacity) {
+        if (!budget.reserveDirect(capacity)) {
+            full = true;
+        }
+        pageBytes += capacity;
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private void releasePage(ByteBuffer page) {
+        pageBytes -= page.capacity();
+        budget.releaseDirect(page.capacity());
+    }
+
+    private void grow() {
+        long[] oldAddresses = addresses;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        allocateTable(oldAddresses.length * 2);
+        for (int i = 0; i < oldAddresses.length; i++) {
+            if (oldAddresses[i] == EMPTY) {
+                continue;
+            }
+            int slot = oldHashes[i] & mask;
+            while (addresses[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            addresses[slot] = oldAddresses[i];
+            hashes[slot] = oldHashes[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the capacity of the allocated pages and the size of the table
+     */
+    @Override
+    public long bytesHeld() {
+        return pageBytes + (long) addresses.length * SLOT_BYTES;
+    }
+
+    @Override
+    public boolean isFull() {
+        return full;
+    }
+
+    @Override
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public void write(BinaryValueWriter writer) throws IOException {
+        ByteBuffer[] keyPages = pages.toArray(new ByteBuffer[0]);
+        int[] keyPageIndices = new int[size];
+        int[] keyOffsets = new int[size];
+        int[] keyLengths = new int[size];
+        long[] keyCounts = new long[size];
+        int[] order = new int[size];
+        int index = 0;
+        for (int slot = 0; slot < addresses.length; slot++) {
+            if (addresses[slot] == EMPTY) {
+                continue;
+            }
+            keyPageIndices[index] = (int) (addresses[slot] >>> 32);
+            // skip the length prefix
+            keyOffsets[index] = (int) addresses[slot] + 4;
+            keyLengths[index] = keyPages[keyPageIndices[index]].getInt(keyOffsets[index] - 4);
+            keyCounts[index] = counts[slot];
+            order[index] = index;
+            index++;
+        }
+        // the keys are sorted where they are stored in the arena
+        RadixSorter.sort(order, new RadixSorter.Keys() {
+            @Override
+            public int length(int key) {
+                return keyLengths[key];
+            }
+
+            @Override
+            public int byteAt(int key, int depth) {
+                return keyPages[keyPageIndices[key]].get(keyOffsets[key] + depth) & 0xFF;
+            }
+        });
+        for (int key : order) {
+            byte[] bytes = readKey(keyPages[keyPageIndices[key]], keyOffsets[key] - 4, keyLengths[key]);
+            writer.writeEntry(bytes, 0, keyLengths[key], keyCounts[key]);
+        }
+        writer.close();
+    }
+
+    @Override
+    public void clear() {
+        if (addresses.length > initialCapacity) {
+            allocateTable(initialCapacity);
+        } else {
+            Arrays.fill(addresses, EMPTY);
+        }
+        size = 0;
+        full = false;
+        // the pages beyond the first one are released, so the held bytes shrink with the table
+        while (pages.size() > 1) {
+            releasePage(pages.remove(pages.size() - 1));
+        }
+        currentPage = -1;
+        pagePosition = 0;
+    }
+
+    @Override
+    public void release() {
+        for (ByteBuffer page : pages) {
+            releasePage(page);
+        }
+        pages.clear();
+        currentPage = -1;
+        pagePosition = 0;
+    }
+}
@@ -0,0 +1,122 @@
+package spider.structures;
+
+import java.util.Arrays;
+
+/**
+ * Sorts distinct keys by the unsigned order of their bytes with a most significant digit first radix sort. The keys are
+ * represented by indices, so the callers can carry any payload like the counts along. Small buckets are finished by an
+ * insertion sort, and the buckets still to sort are kept on an explicit stack, so long common prefixes cannot overflow
+ * the call stack.
+ */
+final class RadixSorter {
+
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    /**
+     * Gives access to the bytes of the keys.
+     */
+    interface Keys {
+
+        int length(int key);
+
+        /**
+         * @return the byte of the key at the given depth as unsigned value
+         */
+        int byteAt(int key, int depth);
+    }
+
+    private RadixSorter() {
+    }
+
+    /**
+     * Sorts the key indices in place. The keys need to be distinct.
+     */
+    static void sort(int[] order, Keys keys) {
+        int[] buffer = new int[order.length];
+        byte[] digits = new byte[order.length];
+        boolean[] ended = new boolean[order.length];
+        int[] counts = new int[257];
+        // every bucket is stored as start, end and depth
+        int[] stack = new int[3 * 64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = order.length;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int depth = stack[--top];
+            int end = stack[--top];
+            int start = stack[--top];
+            if (end - start < INSERTION_SORT_THRESHOLD) {
+                insertionSort(order, start, end, depth, keys);
+                continue;
+            }
+
+            Arrays.fill(counts, 0);
+            for (int i = start; i < end; i++) {
+                int key = order[i];
+                if (keys.length(key) <= depth) {
+                    ended[i] = true;
+                    counts[0]++;
+                } else {
+                    ended[i] = false;
+                    int digit = keys.byteAt(key, depth);
+                    digits[i] = (byte) digit;
+                    counts[digit + 1]++;
+                }
+            }
+            // turn the counts into bucket starts
+            int position = start;
+            for (int bucket = 0; bucket < 257; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = position;
+                position += count;
+            }
+            for (int i = start; i < end; i++) {
+                int bucket = ended[i] ? 0 : (digits[i] & 0xFF) + 1;
+                buffer[counts[bucket]++] = order[i];
+            }
+            System.arraycopy(buffer, start, order, start, end - start);
+
+            // counts now hold the bucket ends, the bucket of ended keys holds at most one key since keys are distinct
+            int bucketStart = counts[0];
+            for (int bucket = 1; bucket < 257; bucket++) {
+                int bucketEnd = counts[bucket];
+                if (bucketEnd - bucketStart > 1) {
+                    if (top + 3 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = bucketStart;
+                    stack[top++] = bucketEnd;
+                    stack[top++] = depth + 1;
+                }
+                bucketStart = bucketEnd;
+            }
+        }
+    }
+
+    private static void insertionSort(int[] order, int start, int end, int depth, Keys keys) {
+        for (int i = start + 1; i < end; i++) {
+            int key = order[i];
+            int j = i - 1;
+            while (j >= start && compare(order[j], key, depth, keys) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = key;
+        }
+    }
+
+    private static int compare(int a, int b, int depth, Keys keys) {
+        int lengthA = keys.length(a);
+        int lengthB = keys.length(b);
+        int length = Math.min(lengthA, lengthB);
+        for (int i = depth; i < length; i++) {
+            int difference = keys.byteAt(a, i) - keys.byteAt(b, i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return lengthA - lengthB;
+    }
+}
@@ -0,0 +1,324 @@
+package spider.structures;
+
+import spider.io.BinaryValueReader;
+import spider.io.BinaryValueWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sorts a single large attribute with several threads. A sample of the values yields splitters that divide the value
+ * range into partitions. Every value is routed into the file of its partition and the partitions are sorted
+ * concurrently. Since the partitions cover disjoint, ascending value ranges, writing their sorted values in order
+ * yields the sorted attribute.
+ */
+public class RangePartitionedSort {
+
+    // more partitions than threads, so that a skewed partition does not leave the other threads idle
+    private static final int PARTITIONS_PER_THREAD = 4;
+    private static final int SAMPLES_PER_PARTITION = 64;
+
+    private final Attribute attribute;
+    private final long memoryLimit;
+    private final int numThreads;
+    private final MemoryBudget budget;
+    private final boolean offHeap;
+    private final boolean asyncSpill;
+    private final int maxFanIn;
+    // the partition whose values are written to the sorted file next
+    private int turn;
+    private boolean failed = false;
+
+    /**
+     * @param memoryLimit the number of bytes all partition sorts together may hold
+     * @param numThreads  the number of partitions sorted concurrently
+     */
+    public RangePartitionedSort(Attribute attribute, long memoryLimit, int numThreads, MemoryBudget budget, boolean offHeap, boolean asyncSpill, int maxFanIn) {
+        this.attribute = attribute;
+        this.memoryLimit = memoryLimit;
+        this.numThreads = Math.max(1, numThreads);
+        this.budget = budget;
+        this.offHeap = offHeap;
+        this.asyncSpill = asyncSpill;
+        this.maxFanIn = maxFanIn;
+    }
+
+    public void sort() throws IOException {
+        byte[][] splitters = sampleSplitters(numThreads * PARTITIONS_PER_THREAD);
+        int partitions = splitters.length + 1;
+
+        List<List<Path>> rawPartitions = new ArrayList<>(partitions);
+        List<List<Path>> runPartitions = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            rawPartitions.add(new ArrayList<>());
+            runPartitions.add(new ArrayList<>());
+        }
+        routeRawFiles(splitters, rawPartitions);
+        for (Path run : attribute.getSortedRuns()) {
+            routeRun(run, splitters, runPartitions);
+        }
+
+        long[] uniqueSizes = new long[partitions];
+        int[] runCounts = new int[partitions];
+        AtomicInteger nextPartition = new AtomicInteger();
+        BinaryValueWriter writer = attribute.createSortedWriter();
+        // every partition sort closes the writer once its values are written
+        writer.setKeepOpen(true);
+        turn = nextNonEmpty(0, rawPartitions, runPartitions);
+        // the calling thread sorts partitions as well, so that no more than numThreads threads sort
+        PartitionSorter[] sorters = new PartitionSorter[Math.min(numThreads, partitions)];
+        for (int i = 0; i < sorters.length; i++) {
+            sorters[i] = new PartitionSorter(nextPartition, rawPartitions, runPartitions, writer, uniqueSizes, runCounts,
+                    memoryLimit / sorters.length);
+            if (i > 0) {
+                sorters[i].start();
+            }
+        }
+        sorters[0].run();
+        Throwable failure = sorters[0].failure;
+        for (int i = 1; i < sorters.length; i++) {
+            try {
+                sorters[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while sorting the partitions of " + attribute.getPath(), e);
+            }
+            if (failure == null) {
+                failure = sorters[i].failure;
+            }
+        }
+        writer.setKeepOpen(false);
+        writer.close();
+        if (failure instanceof IOException e) {
+            throw e;
+        }
+        if (failure != null) {
+            throw new IOException("Could not sort the partitions of " + attribute.getPath(), failure);
+        }
+
+        long uniqueSize = 0L;
+        // one file is created when merging
+        attribute.spilledFiles = 1;
+        for (int i = 0; i < partitions; i++) {
+            uniqueSize += uniqueSizes[i];
+            attribute.spilledFiles += runCounts[i];
+        }
+        attribute.setUniqueSize(uniqueSize);
+    }
+
+    /**
+     * @return the first partition from on that holds any values, the number of partitions if there is none
+     */
+    private static int nextNonEmpty(int from, List<List<Path>> rawPartitions, List<List<Path>> runPartitions) {
+        while (from < rawPartitions.size() && rawPartitions.get(from).isEmpty() && runPartitions.get(from).isEmpty()) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Waits until all partitions in front of the given one are written to the sorted file.
+     */
+    private synchronized void awaitTurn(int partition) throws IOException {
+        while (turn != partition && !failed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting to write partition " + partition + " of " + attribute.getPath(), e);
+            }
+        }
+        if (failed) {
+            throw new IOException("An earlier partition of " + attribute.getPath() + " failed");
+        }
+    }
+
+    private synchronized void passTurn(int next) {
+        turn = next;
+        notifyAll();
+    }
+
+    private synchronized void fail() {
+        failed = true;
+        notifyAll();
+    }
+
+    /**
+     * Draws a uniform sample of the values of the raw files and the sorted runs and picks evenly spaced splitters.
+     *
+     * @return the distinct splitters in ascending order, fewer than requested if the values are not diverse enough
+     */
+    private byte[][] sampleSplitters(int partitions) throws IOException {
+        byte[][] sample = new byte[partitions * SAMPLES_PER_PARTITION][];
+        Random random = new Random(attribute.getId());
+        long seen = 0L;
+        List<Path> files = new ArrayList<>(attribute.getRawFiles());
+        files.addAll(attribute.getSortedRuns());
+        for (int i = 0; i < files.size(); i++) {
+            // the sorted runs follow the raw files and store occurrences
+            boolean withOccurrences = i >= attribute.getRawFiles().size();
+            BinaryValueReader reader = new BinaryValueReader(files.get(i));
+            int length;
+            while ((length = reader.readValueBytes()) >= 0) {
+                long slot = seen < sample.length ? seen : (long) (random.nextDouble() * (seen + 1));
+                if (slot < sample.length) {
+                    int start = reader.getValueStart();
+                    sample[(int) slot] = Arrays.copyOfRange(reader.getBuffer(), start, start + length);
+                }
+                seen++;
+                if (withOccurrences) {
+                    reader.readOccurrences();
+                }
+            }
+            reader.close();
+        }
+
+        int sampled = (int) Math.min(seen, sample.length);
+        byte[][] sorted = Arrays.copyOf(sample, sampled);
+        Arrays.sort(sorted, Arrays::compareUnsigned);
+        List<byte[]> splitters = new ArrayList<>();
+        for (int i = 1; i < partitions; i++) {
+            if (sampled == 0) break;
+            byte[] splitter = sorted[(int) ((long) i * sampled / partitions)];
+            if (splitters.isEmpty() || Arrays.compareUnsigned(splitters.get(splitters.size() - 1), splitter) < 0) {
+                splitters.add(splitter);
+            }
+        }
+        return splitters.toArray(new byte[0][]);
+    }
+
+    /**
+     * @return the partition of the value, i.e. the number of splitters that are less than or equal to it
+     */
+    private static int partitionOf(byte[][] splitters, byte[] bytes, int start, int length) {
+        int low = 0;
+        int high = splitters.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            byte[] splitter = splitters[middle];
+            if (Arrays.compareUnsigned(splitter, 0, splitter.length, bytes, start, start + length) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void routeRawFiles(byte[][] splitters, List<List<Path>> rawPartitions) throws IOException {
+        BinaryValueWriter[] writers = new BinaryValueWriter[rawPartitions.size()];
+        for (Path rawFile : attribute.getRawFiles()) {
+            BinaryValueReader reader = new BinaryValueReader(rawFile);
+            int length;
+            while ((length = reader.readValueBytes()) >= 0) {
+                int partition = partitionOf(splitters, reader.getBuffer(), reader.getValueStart(), length);
+                if (writers[partition] == null) {
+                    Path path = attribute.nextSpillPath();
+                    writers[partition] = new BinaryValueWriter(path);
+                    rawPartitions.get(partition).add(path);
+                }
+                writers[partition].writeValue(reader.getBuffer(), reader.getValueStart(), length);
+            }
+            reader.close();
+            Files.delete(rawFile);
+        }
+        for (BinaryValueWriter writer : writers) {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Splits a sorted run into one sorted run per partition.
+     */
+    private void routeRun(Path run, byte[][] splitters, List<List<Path>> runPartitions) throws IOException {
+        BinaryValueReader reader = new BinaryValueReader(run);
+        BinaryValueWriter writer = null;
+        int current = -1;
+        int length;
+        while ((length = reader.readValueBytes()) >= 0) {
+            int start = reader.getValueStart();
+            int partition = partitionOf(splitters, reader.getBuffer(), start, length);
+            // the run is sorted, so the partitions only ascend
+            if (partition != current) {
+                if (writer != null) {
+                    writer.close();
+                }
+                Path path = attribute.nextSpillPath();
+                writer = attribute.createRunWriter(path);
+                runPartitions.get(partition).add(path);
+                current = partition;
+            }
+            writer.writeValue(reader.getBuffer(), start, length);
+            writer.writeVarLong(reader.readOccurrences());
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        reader.close();
+        Files.delete(run);
+    }
+
+    /**
+     * Sorts the partitions handed out by a shared counter until none is left. The partitions are sorted concurrently,
+     * but each one writes its values into the sorted file only after the ones in front of it.
+     */
+    private class PartitionSorter extends Thread {
+
+        private final AtomicInteger nextPartition;
+        private final List<List<Path>> rawPartitions;
+        private final List<List<Path>> runPartitions;
+        private final BinaryValueWriter writer;
+        private final long[] uniqueSizes;
+        private final int[] runCounts;
+        private final long partitionLimit;
+        private Throwable failure;
+
+        PartitionSorter(AtomicInteger nextPartition, List<List<Path>> rawPartitions, List<List<Path>> runPartitions,
+                        BinaryValueWriter writer, long[] uniqueSizes, int[] runCounts, long partitionLimit) {
+            this.nextPartition = nextPartition;
+            this.rawPartitions = rawPartitions;
+            this.runPartitions = runPartitions;
+            this.writer = writer;
+            this.uniqueSizes = uniqueSizes;
+            this.runCounts = runCounts;
+            this.partitionLimit = partitionLimit;
+        }
+
+        @Override
+        public void run() {
+            int partitions = uniqueSizes.length;
+            int partition;
+            while ((partition = nextPartition.getAndIncrement()) < partitions) {
+                List<Path> raw = rawPartitions.get(partition);
+                List<Path> runs = runPartitions.get(partition);
+                if (raw.isEmpty() && runs.isEmpty()) {
+                    continue;
+                }
+                int capacity = MultiwayMergeSort.initialCapacity(partitionLimit, attribute.getDistinctSketch().estimate() / partitions + 1);
+                int current = partition;
+                try {
+                    MultiwayMergeSort sort = new MultiwayMergeSort(partitionLimit, attribute, capacity, budget, offHeap, asyncSpill, maxFanIn);
+                    uniqueSizes[partition] = sort.sort(raw, runs, () -> {
+                        awaitTurn(current);
+                        return writer;
+                    });
+                    runCounts[partition] = sort.getRunCount();
+                } catch (Throwable e) {
+                    // the partitions behind this one would wait for it forever
+                    failure = e;
+                    fail();
+                    return;
+                }
+                passTurn(nextNonEmpty(partition + 1, rawPartitions, runPartitions));
+            }
+        }
+    }
+}
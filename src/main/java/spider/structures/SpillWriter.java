@@ -0,0 +1,109 @@
+package spider.structures;
+
+import spider.io.BinaryValueWriter;
+
+import java.io.IOException;
+
+/**
+ * Writes full value buffers of a sort as spill files in the background, so that the sort keeps counting into a second
+ * buffer meanwhile. Only one buffer is written at a time. Handing over the next buffer blocks until the previous one
+ * is written and cleared, which bounds a sort to two buffers.
+ */
+class SpillWriter extends Thread {
+
+    private ValueCounter pending;
+    private BinaryValueWriter target;
+    private boolean closed = false;
+    private Throwable failure;
+
+    SpillWriter(String name) {
+        super(name);
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            ValueCounter buffer;
+            BinaryValueWriter writer;
+            synchronized (this) {
+                while (pending == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending == null) return;
+                buffer = pending;
+                writer = target;
+            }
+            try {
+                buffer.write(writer);
+                buffer.clear();
+            } catch (Throwable e) {
+                synchronized (this) {
+                    failure = e;
+                }
+            } finally {
+                // also after a failure, so that the sort does not wait for the buffer forever
+                synchronized (this) {
+                    pending = null;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the previous buffer is written and hands over the next one. The caller must not touch the buffer
+     * until the writer is idle again.
+     */
+    synchronized void submit(ValueCounter buffer, BinaryValueWriter writer) throws IOException {
+        awaitIdle();
+        this.pending = buffer;
+        this.target = writer;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the buffer that is currently written is done.
+     *
+     * @throws IOException if writing any buffer failed
+     */
+    synchronized void awaitIdle() throws IOException {
+        while (pending != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a spill file", e);
+            }
+        }
+        if (failure instanceof IOException e) {
+            throw e;
+        }
+        if (failure != null) {
+            throw new IOException("Could not write a spill file", failure);
+        }
+    }
+
+    /**
+     * Waits for the last buffer and stops the writer.
+     */
+    void finish() throws IOException {
+        synchronized (this) {
+            try {
+                awaitIdle();
+            } finally {
+                closed = true;
+                notifyAll();
+            }
+        }
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package spider.structures;
+
+import spider.io.BinaryValueWriter;
+
+import java.io.IOException;
+
+/**
+ * Counts the occurrences of the distinct values of an attribute until they are written as a sorted run.
+ */
+interface ValueCounter {
+
+    /**
+     * @return true if the value was not counted before
+     */
+    boolean add(String value);
+
+    /**
+     * Counts the value given by its UTF-8 bytes.
+     *
+     * @return true if the value was not counted before
+     */
+    boolean add(byte[] bytes, int start, int length);
+
+    int size();
+
+    /**
+     * @return the number of bytes the counted values occupy
+     */
+    long bytesHeld();
+
+    /**
+     * @return true if the counter cannot take further distinct values within its memory limit
+     */
+    boolean isFull();
+
+    /**
+     * Sets the number of bytes the counter may grow to.
+     */
+    void setMemoryLimit(long memoryLimit);
+
+    /**
+     * Writes the values in sorted order together with their counts and closes the writer.
+     */
+    void write(BinaryValueWriter writer) throws IOException;
+
+    void clear();
+
+    /**
+     * Returns the memory that is reserved outside of the heap, the counter is not used afterwards.
+     */
+    default void release() {
+    }
+}
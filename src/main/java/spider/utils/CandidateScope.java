@@ -0,0 +1,82 @@
+package spider.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which attributes take part in the pIND candidates. Attributes are matched by their qualified name
+ * "table.column" against glob patterns, in which * matches any sequence of characters and ? matches a single character.
+ * An attribute belongs to a side if it matches at least one include pattern (or there are none) and no exclude pattern.
+ */
+public class CandidateScope {
+
+    private final List<Pattern> dependentIncludes;
+    private final List<Pattern> dependentExcludes;
+    private final List<Pattern> referencedIncludes;
+    private final List<Pattern> referencedExcludes;
+    private final boolean crossTableOnly;
+
+    public CandidateScope(String[] dependentIncludes, String[] dependentExcludes, String[] referencedIncludes, String[] referencedExcludes, boolean crossTableOnly) {
+        this.dependentIncludes = compile(dependentIncludes);
+        this.dependentExcludes = compile(dependentExcludes);
+        this.referencedIncludes = compile(referencedIncludes);
+        this.referencedExcludes = compile(referencedExcludes);
+        this.crossTableOnly = crossTableOnly;
+    }
+
+    public boolean isDependent(String tableName, String columnName) {
+        return matches(tableName + "." + columnName, dependentIncludes, dependentExcludes);
+    }
+
+    public boolean isReferenced(String tableName, String columnName) {
+        return matches(tableName + "." + columnName, referencedIncludes, referencedExcludes);
+    }
+
+    /**
+     * @return true if attributes of the two tables may form a candidate
+     */
+    public boolean isCandidate(String dependentTable, String referencedTable) {
+        return !crossTableOnly || !dependentTable.equals(referencedTable);
+    }
+
+    private static boolean matches(String name, List<Pattern> includes, List<Pattern> excludes) {
+        if (!includes.isEmpty() && includes.stream().noneMatch(pattern -> pattern.matcher(name).matches())) {
+            return false;
+        }
+        return excludes.stream().noneMatch(pattern -> pattern.matcher(name).matches());
+    }
+
+    private static List<Pattern> compile(String[] globs) {
+        List<Pattern> patterns = new ArrayList<>();
+        if (globs == null) {
+            return patterns;
+        }
+        for (String glob : globs) {
+            if (glob != null && !glob.isBlank()) {
+                patterns.add(toPattern(glob.trim()));
+            }
+        }
+        return patterns;
+    }
+
+    private static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (!literal.isEmpty()) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (!literal.isEmpty()) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
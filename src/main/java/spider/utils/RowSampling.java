@@ -0,0 +1,5 @@
+package spider.utils;
+
+public enum RowSampling {
+    FIRST, RESERVOIR
+}
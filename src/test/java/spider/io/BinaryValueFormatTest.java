@@ -0,0 +1,191 @@
+package spider.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryValueFormatTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void readsValuesWithAnyCharacter() throws IOException {
+        List<String> values = List.of("", "a", "line\nbreak", "tab\tand,comma", "\"quoted\"", "äöü", "😀", "\0");
+        Path file = folder.resolve("values");
+        try (BinaryValueWriter writer = new BinaryValueWriter(file)) {
+            for (String value : values) {
+                writer.writeValue(value);
+            }
+        }
+        List<String> read = new ArrayList<>();
+        try (BinaryValueReader reader = new BinaryValueReader(file)) {
+            String value;
+            while ((value = reader.readValue()) != null) {
+                read.add(value);
+            }
+        }
+        assertEquals(values, read);
+    }
+
+    @Test
+    void readsEntriesWithOccurrences() throws IOException {
+        Path file = folder.resolve("entries");
+        try (BinaryValueWriter writer = new BinaryValueWriter(file)) {
+            writer.writeEntry("a", 1L);
+            writer.writeEntry("b", 127L);
+            writer.writeEntry("c", 128L);
+            writer.writeEntry("d", Long.MAX_VALUE);
+        }
+        try (BinaryValueReader reader = new BinaryValueReader(file)) {
+            assertEquals("a", reader.readValue());
+            assertEquals(1L, reader.readOccurrences());
+            assertEquals("b", reader.readValue());
+            assertEquals(127L, reader.readOccurrences());
+            assertEquals("c", reader.readValue());
+            assertEquals(128L, reader.readOccurrences());
+            assertEquals("d", reader.readValue());
+            assertEquals(Long.MAX_VALUE, reader.readOccurrences());
+            assertNull(reader.readValue());
+        }
+    }
+
+    @Test
+    void readsValuesLargerThanTheBuffers() throws IOException {
+        String large = "x".repeat(200_000);
+        Path file = folder.resolve("large");
+        try (BinaryValueWriter writer = new BinaryValueWriter(file)) {
+            for (int i = 0; i < 3; i++) {
+                writer.writeEntry(large + i, i);
+            }
+        }
+        try (BinaryValueReader reader = new BinaryValueReader(file)) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(large + i, reader.readValue());
+                assertEquals(i, reader.readOccurrences());
+            }
+            assertNull(reader.readValue());
+        }
+    }
+
+    @Test
+    void readsRegionsOfASharedChannel() throws IOException {
+        // two files written one after another into the same stream, as done for segment files
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (BinaryValueWriter writer = new BinaryValueWriter(output)) {
+            writer.writeEntry("a", 1L);
+            writer.writeEntry("b", 2L);
+        }
+        int firstLength = output.size();
+        try (BinaryValueWriter writer = new BinaryValueWriter(output)) {
+            writer.writeEntry("c", 3L);
+        }
+        Path file = Files.write(folder.resolve("segment"), output.toByteArray());
+        try (FileChannel channel = FileChannel.open(file)) {
+            try (BinaryValueReader reader = new BinaryValueReader(channel, 0L, firstLength, false)) {
+                assertEquals("a", reader.readValue());
+                assertEquals(1L, reader.readOccurrences());
+                assertEquals("b", reader.readValue());
+                assertEquals(2L, reader.readOccurrences());
+                assertNull(reader.readValue());
+            }
+            try (BinaryValueReader reader = new BinaryValueReader(channel, firstLength, output.size() - firstLength, false)) {
+                assertEquals("c", reader.readValue());
+                assertEquals(3L, reader.readOccurrences());
+                assertNull(reader.readValue());
+            }
+        }
+    }
+
+    @Test
+    void readsEmptyFiles() throws IOException {
+        Path file = folder.resolve("empty");
+        new BinaryValueWriter(file).close();
+        try (BinaryValueReader reader = new BinaryValueReader(file)) {
+            assertEquals(-1, reader.readValueBytes());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 16})
+    void readsFrontCodedValues(int restartInterval) throws IOException {
+        List<String> values = sortedValues();
+        Path file = folder.resolve("front coded");
+        try (BinaryValueWriter writer = new BinaryValueWriter(file, restartInterval)) {
+            for (int i = 0; i < values.size(); i++) {
+                writer.writeEntry(values.get(i), i + 1);
+            }
+        }
+        try (BinaryValueReader reader = new BinaryValueReader(file)) {
+            for (int i = 0; i < values.size(); i++) {
+                assertEquals(values.get(i), reader.readValue());
+                assertEquals(i + 1, reader.readOccurrences());
+            }
+            assertNull(reader.readValue());
+        }
+    }
+
+    @Test
+    void frontCodingStoresSharedPrefixesOnce() throws IOException {
+        List<String> values = sortedValues();
+        Path plain = folder.resolve("plain");
+        Path frontCoded = folder.resolve("front coded");
+        try (BinaryValueWriter plainWriter = new BinaryValueWriter(plain);
+             BinaryValueWriter frontCodedWriter = new BinaryValueWriter(frontCoded, 16)) {
+            for (String value : values) {
+                plainWriter.writeEntry(value, 1L);
+                frontCodedWriter.writeEntry(value, 1L);
+            }
+        }
+        assertTrue(Files.size(frontCoded) < Files.size(plain) / 2);
+    }
+
+    @Test
+    void continuesFrontCodingOfAKeptOpenWriter() throws IOException {
+        List<String> values = sortedValues();
+        Path file = folder.resolve("shared");
+        BinaryValueWriter writer = new BinaryValueWriter(file, 3);
+        writer.setKeepOpen(true);
+        // two sorts writing one value range each
+        for (List<String> range : List.of(values.subList(0, 50), values.subList(50, values.size()))) {
+            for (String value : range) {
+                writer.writeEntry(value, 1L);
+            }
+            writer.close();
+        }
+        writer.setKeepOpen(false);
+        writer.close();
+        try (BinaryValueReader reader = new BinaryValueReader(file)) {
+            for (String value : values) {
+                assertEquals(value, reader.readValue());
+                assertEquals(1L, reader.readOccurrences());
+            }
+            assertNull(reader.readValue());
+        }
+    }
+
+    private static List<String> sortedValues() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(String.format("customer-%05d", i * 7));
+        }
+        // a value that is a prefix of the next one and a value longer than the ones before
+        values.add("customer-99");
+        values.add("customer-99" + "9".repeat(100));
+        values.add("d");
+        return values;
+    }
+}
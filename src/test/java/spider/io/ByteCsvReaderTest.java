@@ -0,0 +1,106 @@
+package spider.io;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import de.metanome.algorithm_integration.configuration.ConfigurationSettingFileInput;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteCsvReaderTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void readsQuotedFields() throws IOException {
+        List<String[]> records = read("\"a,b\",\"c\nd\",\"e\"\"f\"\n x ,\"\",y\r\n", 3);
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"a,b", "c\nd", "e\"f"}, records.get(0));
+        assertArrayEquals(new String[]{" x ", null, "y"}, records.get(1));
+    }
+
+    @Test
+    void readsEscapesLikeOpenCsv() throws IOException {
+        CSVParser parser = new CSVParserBuilder().withSeparator(',').withQuoteChar('"').withEscapeChar('\\')
+                .withIgnoreLeadingWhiteSpace(true).build();
+        String[] lines = {"a\\Nb,c", "a\\\\b,c", "a\\\"b,c", "a\\,b,c", "\"a\\\"b\",c", "\"a\\Nb\",c", "\"a\\\\\",c",
+                "a,bc\\", "\\,a\\"};
+        for (String line : lines) {
+            String[] expected = parser.parseLine(line);
+            List<String[]> records = read(line + "\n", expected.length);
+            assertEquals(1, records.size(), line);
+            assertArrayEquals(expected, records.get(0), line);
+        }
+    }
+
+    @Test
+    void escapeAtTheEndOfALineDoesNotContinueTheRecord() throws IOException {
+        List<String[]> records = read("a\\\nb\\\r\nc\\", 1);
+        assertEquals(3, records.size());
+        assertArrayEquals(new String[]{"a"}, records.get(0));
+        assertArrayEquals(new String[]{"b"}, records.get(1));
+        assertArrayEquals(new String[]{"c"}, records.get(2));
+    }
+
+    @Test
+    void readsRecordsAcrossBufferBoundaries() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            content.append('"').append(i).append("\\\"\n\",").append(i).append("\\\\\n");
+        }
+        List<String[]> records = read(content.toString(), 2);
+        assertEquals(100_000, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertArrayEquals(new String[]{i + "\"\n", i + "\\"}, records.get(i));
+        }
+    }
+
+    @Test
+    void readsHeaderAndNullValues() throws IOException {
+        Path file = write("x,y\nNULL,1\n");
+        try (ByteCsvReader reader = new ByteCsvReader(file, setting(true, "NULL"), new FileRange(0, Files.size(file)), 0)) {
+            assertArrayEquals(new String[]{"x", "y"}, reader.getHeaderLine());
+            assertEquals(2, reader.numberOfColumns());
+            assertTrue(reader.nextRecord());
+            assertTrue(reader.isNull(0));
+            assertNull(reader.getString(0));
+            assertEquals("1", reader.getString(1));
+            assertFalse(reader.nextRecord());
+        }
+    }
+
+    private List<String[]> read(String content, int numberOfColumns) throws IOException {
+        Path file = write(content);
+        List<String[]> records = new ArrayList<>();
+        try (ByteCsvReader reader = new ByteCsvReader(file, setting(false, ""), new FileRange(0, Files.size(file)), numberOfColumns)) {
+            while (reader.nextRecord()) {
+                String[] record = new String[reader.fieldCount()];
+                Arrays.setAll(record, reader::getString);
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.write(Files.createTempFile(folder, "input", ".csv"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ConfigurationSettingFileInput setting(boolean header, String nullValue) {
+        return new ConfigurationSettingFileInput("input", true, ',', '"', '\\', false, true, 0, header, false, nullValue);
+    }
+}
@@ -0,0 +1,72 @@
+package spider.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileRangeTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void splitsAtEveryLineBreakWithoutQuotes() throws IOException {
+        Path file = write("abc,1\n", 100);
+        for (int parts = 1; parts <= 16; parts++) {
+            assertAlignedTo(6, FileRange.split(file, parts, '\0', '\0'), Files.size(file), parts);
+        }
+    }
+
+    @Test
+    void doesNotSplitAtQuotedLineBreaks() throws IOException {
+        // the line break of every record lies within quotes
+        Path file = write("\"a\nb\",\"c\n\nd\"\n", 100);
+        for (int parts = 1; parts <= 16; parts++) {
+            assertAlignedTo(13, FileRange.split(file, parts, '"', '\\'), Files.size(file), parts);
+        }
+    }
+
+    @Test
+    void escapedQuotesDoNotEndQuotes() throws IOException {
+        Path file = write("\"a\\\"\nb\",\"\"\"\n\"\n", 100);
+        for (int parts = 1; parts <= 16; parts++) {
+            assertAlignedTo(14, FileRange.split(file, parts, '"', '\\'), Files.size(file), parts);
+        }
+    }
+
+    @Test
+    void coversSmallFilesWithOneRange() throws IOException {
+        Path file = write("\"a\nb\"\n", 1);
+        List<FileRange> ranges = FileRange.split(file, 4, '"', '\\');
+        assertEquals(1, ranges.size());
+        assertEquals(0L, ranges.get(0).start);
+        assertEquals(Files.size(file), ranges.get(0).end);
+    }
+
+    private Path write(String record, int times) throws IOException {
+        Path file = folder.resolve("input.csv");
+        Files.writeString(file, record.repeat(times), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Checks that the ranges cover the file in order and every range starts at a record.
+     */
+    private static void assertAlignedTo(int recordLength, List<FileRange> ranges, long size, int parts) {
+        long expectedStart = 0L;
+        for (FileRange range : ranges) {
+            assertEquals(expectedStart, range.start, "parts " + parts);
+            assertEquals(0L, range.start % recordLength, "parts " + parts + ", " + range);
+            expectedStart = range.end;
+        }
+        assertEquals(size, expectedStart, "parts " + parts);
+        assertEquals(Math.min(parts, 100), ranges.size(), "parts " + parts);
+    }
+}
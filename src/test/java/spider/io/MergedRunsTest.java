@@ -0,0 +1,103 @@
+package spider.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MergedRunsTest {
+
+    @TempDir
+    Path folder;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 5, 8, 17})
+    void mergesRunsAndSumsOccurrences(int k) throws IOException {
+        Random random = new Random(k);
+        List<TreeMap<String, Long>> runs = new ArrayList<>();
+        for (int run = 0; run < k; run++) {
+            TreeMap<String, Long> values = new TreeMap<>(MergedRunsTest::compareBytes);
+            int size = random.nextInt(300);
+            for (int i = 0; i < size; i++) {
+                values.merge(randomValue(random), 1L + random.nextInt(5), Long::sum);
+            }
+            runs.add(values);
+        }
+        assertMerged(runs);
+    }
+
+    @Test
+    void ordersByUnsignedBytes() throws IOException {
+        // UTF-16 order would put the supplementary character before U+FFFD, the byte order after it
+        TreeMap<String, Long> first = new TreeMap<>(MergedRunsTest::compareBytes);
+        first.put("a", 1L);
+        first.put("\uFFFD", 1L);
+        TreeMap<String, Long> second = new TreeMap<>(MergedRunsTest::compareBytes);
+        second.put("é", 2L);
+        second.put("\uD83D\uDE00", 3L);
+        assertMerged(List.of(first, second));
+    }
+
+    @Test
+    void skipsEmptyRuns() throws IOException {
+        TreeMap<String, Long> values = new TreeMap<>(MergedRunsTest::compareBytes);
+        values.put("x", 4L);
+        assertMerged(List.of(new TreeMap<>(), values, new TreeMap<>()));
+        assertMerged(List.of(new TreeMap<>(), new TreeMap<>()));
+        MergedRuns none = new MergedRuns(List.of());
+        assertFalse(none.hasNext());
+        none.close();
+    }
+
+    private void assertMerged(List<TreeMap<String, Long>> runs) throws IOException {
+        TreeMap<String, Long> expected = new TreeMap<>(MergedRunsTest::compareBytes);
+        List<Path> files = new ArrayList<>();
+        for (TreeMap<String, Long> run : runs) {
+            Path file = folder.resolve("run" + files.size() + "-" + System.nanoTime());
+            // front coded and plain runs can be mixed
+            try (BinaryValueWriter writer = new BinaryValueWriter(file, files.size() % 2 == 0 ? 0 : 4)) {
+                for (Map.Entry<String, Long> entry : run.entrySet()) {
+                    writer.writeEntry(entry.getKey(), entry.getValue());
+                    expected.merge(entry.getKey(), entry.getValue(), Long::sum);
+                }
+            }
+            files.add(file);
+        }
+        List<String> values = new ArrayList<>();
+        List<Long> occurrences = new ArrayList<>();
+        MergedRuns merged = new MergedRuns(files);
+        while (merged.hasNext()) {
+            values.add(merged.getCurrentValue());
+            occurrences.add(merged.getCurrentOccurrences());
+            merged.advance();
+        }
+        merged.close();
+        assertEquals(new ArrayList<>(expected.keySet()), values);
+        assertEquals(new ArrayList<>(expected.values()), occurrences);
+    }
+
+    private static String randomValue(Random random) {
+        char[] value = new char[random.nextInt(4)];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = "abcä€".charAt(random.nextInt(5));
+        }
+        return new String(value);
+    }
+
+    private static int compareBytes(String a, String b) {
+        return Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+}
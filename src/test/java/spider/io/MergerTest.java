@@ -0,0 +1,80 @@
+package spider.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MergerTest {
+
+    @TempDir
+    Path folder;
+
+    @ParameterizedTest
+    @CsvSource({"1, 2", "5, 8", "8, 8", "9, 8", "10, 2", "10, 3", "20, 4", "64, 8", "65, 8"})
+    void mergesInPassesOfBoundedFanIn(int runs, int fanIn) throws IOException {
+        Path runFolder = Files.createDirectory(folder.resolve("runs"));
+        Path intermediateFolder = Files.createDirectory(folder.resolve("intermediate"));
+        TreeMap<String, Long> expected = new TreeMap<>();
+        List<Path> files = new ArrayList<>();
+        for (int run = 0; run < runs; run++) {
+            Path file = runFolder.resolve("run" + run);
+            try (BinaryValueWriter writer = new BinaryValueWriter(file)) {
+                // every value occurs in several runs
+                for (int value = run; value < 200; value += 1 + run % 3) {
+                    String key = String.format("%03d", value);
+                    writer.writeEntry(key, run + 1);
+                    expected.merge(key, (long) run + 1, Long::sum);
+                }
+            }
+            files.add(file);
+        }
+
+        AtomicInteger intermediates = new AtomicInteger();
+        Supplier<Path> intermediateFiles = () -> intermediateFolder.resolve("merged" + intermediates.getAndIncrement());
+        AtomicInteger intermediatesBeforeOutput = new AtomicInteger(-1);
+        Path output = folder.resolve("output");
+        long distinct = new Merger(fanIn, intermediateFiles, 4).merge(files, () -> {
+            intermediatesBeforeOutput.set(intermediates.get());
+            return new BinaryValueWriter(output);
+        });
+
+        // a Huffman tree with fanIn children has ceil((runs - 1) / (fanIn - 1)) inner nodes, the root is the output
+        int merges = Math.max(1, (runs - 1 + fanIn - 2) / (fanIn - 1));
+        assertEquals(merges - 1, intermediates.get());
+        // the output is only created once all intermediate runs are written
+        assertEquals(merges - 1, intermediatesBeforeOutput.get());
+        try (Stream<Path> left = Files.list(intermediateFolder)) {
+            assertEquals(0L, left.count());
+        }
+
+        assertEquals(expected.size(), distinct);
+        try (BinaryValueReader reader = new BinaryValueReader(output)) {
+            for (Map.Entry<String, Long> entry : expected.entrySet()) {
+                assertEquals(entry.getKey(), reader.readValue());
+                assertEquals(entry.getValue(), reader.readOccurrences());
+            }
+            assertEquals(-1, reader.readValueBytes());
+        }
+    }
+
+    @Test
+    void derivesTheFanInFromTheBufferMemory() {
+        assertEquals(2, Merger.fanIn(0L, 512));
+        assertEquals(10, Merger.fanIn(10L * BinaryValueReader.BUFFER_SIZE, 512));
+        assertEquals(512, Merger.fanIn(Long.MAX_VALUE, 512));
+    }
+}
@@ -0,0 +1,148 @@
+package spider.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReadPointerTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void findsTheFloorOfATarget() {
+        BlockIndex index = new BlockIndex();
+        for (int i = 0; i < 100; i++) {
+            byte[] value = String.format("%03d", i * 10).getBytes(StandardCharsets.UTF_8);
+            index.add(value, 0, value.length, i * 100L);
+        }
+        assertEquals(-1, floor(index, "", 0));
+        assertEquals(0, floor(index, "000", 0));
+        assertEquals(0, floor(index, "009", 0));
+        assertEquals(1, floor(index, "010", 0));
+        assertEquals(54, floor(index, "545", 3));
+        assertEquals(99, floor(index, "999", 0));
+        // entries before from are not considered
+        assertEquals(9, floor(index, "050", 10));
+    }
+
+    private static int floor(BlockIndex index, String target, int from) {
+        byte[] bytes = target.getBytes(StandardCharsets.UTF_8);
+        return index.floor(bytes, 0, bytes.length, from);
+    }
+
+    @Test
+    void storesTheIndexNextToTheFile() throws IOException {
+        Path file = write(values(100), 0, 8);
+        BlockIndex index = BlockIndex.read(BlockIndex.pathOf(file));
+        assertNotNull(index);
+        assertEquals(13, index.size());
+        assertEquals("v00000", new String(index.getValue(0), StandardCharsets.UTF_8));
+        assertEquals("v00016", new String(index.getValue(1), StandardCharsets.UTF_8));
+        assertNull(BlockIndex.read(BlockIndex.pathOf(write(values(10), 0, 0))));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, 0", "0, 1", "0, 16", "4, 10", "16, 16", "3, 1"})
+    void seeksLikeALinearScan(int restartInterval, int indexInterval) throws IOException {
+        List<String> values = values(5000);
+        Path file = write(values, restartInterval, indexInterval);
+        Random random = new Random(restartInterval * 31L + indexInterval);
+        ReadPointer pointer = new ReadPointer(file);
+        try {
+            int expected = 0;
+            while (expected < values.size()) {
+                // targets on and between the values, a target behind the current value keeps it
+                String target = "v" + String.format("%05d", expected * 2 + random.nextInt(300)) + (random.nextBoolean() ? "" : "a");
+                byte[] bytes = target.getBytes(StandardCharsets.UTF_8);
+                pointer.seek(bytes, 0, bytes.length);
+                while (expected < values.size() && values.get(expected).compareTo(target) < 0) {
+                    expected++;
+                }
+                if (expected == values.size()) {
+                    assertFalse(pointer.hasNext());
+                } else {
+                    assertEquals(values.get(expected), pointer.getCurrentValue(), target);
+                    assertEquals(expected + 1, pointer.getCurrentOccurrences());
+                }
+            }
+        } finally {
+            pointer.close();
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, 0", "0, 16", "4, 8"})
+    void readsMappedFilesLikeChannels(int restartInterval, int indexInterval) throws IOException {
+        List<String> values = values(5000);
+        Path file = write(values, restartInterval, indexInterval);
+        ReadPointer pointer = new ReadPointer(new MappedValueReader(file), file, BlockIndex.read(BlockIndex.pathOf(file)));
+        try {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(values.get(i), pointer.getCurrentValue());
+                assertEquals(i + 1, pointer.getCurrentOccurrences());
+                pointer.advance();
+            }
+            byte[] target = "v05001".getBytes(StandardCharsets.UTF_8);
+            pointer.seek(target, 0, target.length);
+            assertEquals("v05002", pointer.getCurrentValue());
+            assertEquals(2502, pointer.getCurrentOccurrences());
+            int read = 2501;
+            while (pointer.hasNext()) {
+                assertEquals(values.get(read++), pointer.getCurrentValue());
+                pointer.advance();
+            }
+            assertEquals(values.size(), read);
+        } finally {
+            pointer.close();
+        }
+    }
+
+    @Test
+    void doesNotSeekBackwards() throws IOException {
+        List<String> values = values(100);
+        ReadPointer pointer = new ReadPointer(write(values, 0, 4));
+        try {
+            byte[] later = "v00100".getBytes(StandardCharsets.UTF_8);
+            pointer.seek(later, 0, later.length);
+            assertEquals("v00100", pointer.getCurrentValue());
+            byte[] earlier = "v00010".getBytes(StandardCharsets.UTF_8);
+            pointer.seek(earlier, 0, earlier.length);
+            assertEquals("v00100", pointer.getCurrentValue());
+            assertEquals("v00102", pointer.next());
+        } finally {
+            pointer.close();
+        }
+    }
+
+    private Path write(List<String> values, int restartInterval, int indexInterval) throws IOException {
+        Path file = folder.resolve("attribute-" + restartInterval + "-" + indexInterval + "-" + values.size());
+        try (BinaryValueWriter writer = new BinaryValueWriter(file, restartInterval, indexInterval)) {
+            for (int i = 0; i < values.size(); i++) {
+                writer.writeEntry(values.get(i), i + 1);
+            }
+        }
+        return file;
+    }
+
+    private static List<String> values(int count) {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(String.format("v%05d", i * 2));
+        }
+        return values;
+    }
+}
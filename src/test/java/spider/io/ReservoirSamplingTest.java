@@ -0,0 +1,57 @@
+package spider.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReservoirSamplingTest {
+
+    @Test
+    void keepsAllRowsUpToTheLimit() {
+        List<Integer> sample = sample(5, 10, new Random(0));
+        assertEquals(List.of(0, 1, 2, 3, 4), sample);
+    }
+
+    @Test
+    void drawsTheSameSampleForTheSameSeed() {
+        assertEquals(sample(10_000, 100, new Random(7)), sample(10_000, 100, new Random(7)));
+    }
+
+    @Test
+    void samplesEveryRowWithTheSameProbability() {
+        int rows = 100;
+        int limit = 10;
+        int trials = 20_000;
+        int[] picked = new int[rows];
+        Random random = new Random(1);
+        for (int trial = 0; trial < trials; trial++) {
+            List<Integer> sample = sample(rows, limit, random);
+            assertEquals(limit, sample.size());
+            for (int row : sample) {
+                picked[row]++;
+            }
+        }
+        // each row is expected trials * limit / rows = 2000 times, the standard deviation is about 42
+        for (int row = 0; row < rows; row++) {
+            assertTrue(Math.abs(picked[row] - trials * limit / rows) < 250, row + ": " + picked[row]);
+        }
+    }
+
+    private static List<Integer> sample(int rows, long limit, Random random) {
+        List<Integer> sample = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int slot = RepositoryRunner.reservoirSlot(row + 1, sample.size(), limit, random);
+            if (slot == sample.size()) {
+                sample.add(row);
+            } else if (slot >= 0) {
+                sample.set(slot, row);
+            }
+        }
+        return sample;
+    }
+}
@@ -0,0 +1,139 @@
+package spider.structures;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CandidateStoreTest {
+
+    // more than two words of bits per row
+    private static final int ATTRIBUTES = 150;
+
+    @Test
+    void iteratesReferencedAttributesAcrossWords() {
+        CandidateStore store = new CandidateStore(ATTRIBUTES, false);
+        store.addReferenced(5, IntArrayList.of(0, 63, 64, 127, 149, 64), 0L);
+        assertEquals(IntArrayList.of(0, 63, 64, 127, 149), referenced(store, 5));
+        assertEquals(64, store.nextReferenced(5, 64));
+        assertEquals(127, store.nextReferenced(5, 65));
+        assertEquals(-1, store.nextReferenced(5, 150));
+        assertEquals(-1, store.nextReferenced(6, 0));
+
+        store.removeReferenced(5, 63);
+        store.removeReferenced(5, 63);
+        assertEquals(IntArrayList.of(0, 64, 127, 149), referenced(store, 5));
+        store.clearReferenced(5);
+        assertFalse(store.hasReferenced(5));
+        assertEquals(-1, store.nextReferenced(5, 0));
+    }
+
+    @Test
+    void finishesAttributesWithoutCandidates() {
+        CandidateStore store = new CandidateStore(ATTRIBUTES, false);
+        store.addReferenced(1, IntArrayList.of(100), 0L);
+        store.addDependent(100, IntArrayList.of(1));
+        assertFalse(store.isFinished(1));
+        assertFalse(store.isFinished(100));
+        assertTrue(store.isFinished(2));
+
+        store.removeReferenced(1, 100);
+        assertTrue(store.isFinished(1));
+        assertFalse(store.isFinished(100));
+        store.clearDependent(100);
+        assertTrue(store.isFinished(100));
+    }
+
+    @Test
+    void removesCandidatesNotSharingAValue() {
+        CandidateStore store = new CandidateStore(ATTRIBUTES, false);
+        store.addReferenced(0, IntArrayList.of(1, 70, 140), 0L);
+        for (int ref : new int[]{1, 70, 140}) {
+            store.addDependent(ref, IntArrayList.of(0));
+        }
+        store.intersectReferenced(0, IntOpenHashSet.of(0, 70, 140), 1L);
+        assertEquals(IntArrayList.of(70, 140), referenced(store, 0));
+        // the dependent side is removed as well
+        assertTrue(store.isFinished(1));
+        store.intersectReferenced(0, IntOpenHashSet.of(0, 70, 2), 1L);
+        assertEquals(IntArrayList.of(70), referenced(store, 0));
+        assertTrue(store.isFinished(140));
+        assertFalse(store.isFinished(70));
+    }
+
+    @Test
+    void keepsCandidatesWithinTheirViolations() {
+        CandidateStore store = new CandidateStore(ATTRIBUTES, false);
+        store.addReferenced(0, IntArrayList.of(1, 2), 3L);
+        store.intersectReferenced(0, IntOpenHashSet.of(0, 1), 2L);
+        assertEquals(3L, store.getViolationsLeft(0, 1));
+        assertEquals(1L, store.getViolationsLeft(0, 2));
+        store.intersectReferenced(0, IntOpenHashSet.of(0, 1), 1L);
+        assertEquals(0L, store.getViolationsLeft(0, 2));
+        assertEquals(IntArrayList.of(1, 2), referenced(store, 0));
+        store.intersectReferenced(0, IntOpenHashSet.of(0, 1), 1L);
+        assertEquals(IntArrayList.of(1), referenced(store, 0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0L, 1L, 5L, 40L})
+    void countsCoOccurrencesLikeDecrementing(long budget) {
+        Random random = new Random(budget);
+        int attributes = 70;
+        CandidateStore decrementing = new CandidateStore(attributes, false);
+        CandidateStore coOccurring = new CandidateStore(attributes, true);
+        for (int dep = 0; dep < attributes; dep++) {
+            IntArrayList refs = new IntArrayList();
+            for (int ref = 0; ref < attributes; ref++) {
+                if (ref != dep && random.nextInt(3) > 0) {
+                    refs.add(ref);
+                }
+            }
+            decrementing.addReferenced(dep, refs, budget);
+            coOccurring.addReferenced(dep, refs, budget);
+            for (int ref : refs) {
+                decrementing.addDependent(ref, IntArrayList.of(dep));
+                coOccurring.addDependent(ref, IntArrayList.of(dep));
+            }
+        }
+
+        for (int value = 0; value < 500; value++) {
+            // the attributes sharing the value, with a skewed group size
+            IntOpenHashSet group = new IntOpenHashSet();
+            int size = 1 + random.nextInt(1 + random.nextInt(attributes));
+            while (group.size() < size) {
+                group.add(random.nextInt(attributes));
+            }
+            long violations = 1L + random.nextInt(3);
+            for (int dep : group) {
+                decrementing.intersectReferenced(dep, group, violations);
+                coOccurring.intersectReferenced(dep, group, violations);
+            }
+            for (int dep = 0; dep < attributes; dep++) {
+                IntArrayList refs = referenced(decrementing, dep);
+                assertEquals(refs, referenced(coOccurring, dep));
+                assertEquals(decrementing.isFinished(dep), coOccurring.isFinished(dep));
+                if (budget > 0L) {
+                    for (int ref : refs) {
+                        assertEquals(decrementing.getViolationsLeft(dep, ref), coOccurring.getViolationsLeft(dep, ref));
+                    }
+                }
+            }
+        }
+    }
+
+    private static IntArrayList referenced(CandidateStore store, int dep) {
+        IntArrayList refs = new IntArrayList();
+        for (int ref = store.nextReferenced(dep, 0); ref >= 0; ref = store.nextReferenced(dep, ref + 1)) {
+            refs.add(ref);
+        }
+        return refs;
+    }
+}
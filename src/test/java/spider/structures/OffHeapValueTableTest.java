@@ -0,0 +1,119 @@
+package spider.structures;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spider.io.BinaryValueReader;
+import spider.io.BinaryValueWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapValueTableTest {
+
+    @TempDir
+    Path folder;
+
+    private MemoryBudget budget;
+
+    @BeforeEach
+    void createBudget() {
+        budget = new MemoryBudget(90, 1000);
+    }
+
+    @AfterEach
+    void closeBudget() {
+        budget.close();
+    }
+
+    @Test
+    void countsAndWritesSortedValues() throws IOException {
+        OffHeapValueTable table = new OffHeapValueTable(16, 1L << 30, budget);
+        Random random = new Random(1);
+        Map<String, Long> expected = new TreeMap<>(OffHeapValueTableTest::compareBytes);
+        for (int i = 0; i < 100_000; i++) {
+            String value = Integer.toString(random.nextInt(20_000), 36) + (i % 7 == 0 ? "ü" : "");
+            boolean added = table.add(value);
+            assertEquals(!expected.containsKey(value), added);
+            expected.merge(value, 1L, Long::sum);
+        }
+        assertEquals(expected.size(), table.size());
+        assertFalse(table.isFull());
+        assertEquals(expected, write(table));
+        table.release();
+    }
+
+    @Test
+    void storesValuesLargerThanAPage() throws IOException {
+        OffHeapValueTable table = new OffHeapValueTable(16, 1L << 30, budget);
+        String large = "x".repeat(3 << 20);
+        table.add("a");
+        table.add(large);
+        table.add("b");
+        byte[] bytes = large.getBytes(StandardCharsets.UTF_8);
+        assertFalse(table.add(bytes, 0, bytes.length));
+        Map<String, Long> expected = new LinkedHashMap<>();
+        expected.put("a", 1L);
+        expected.put("b", 1L);
+        expected.put(large, 2L);
+        assertEquals(expected, write(table));
+        table.release();
+    }
+
+    @Test
+    void reportsFullAtTheMemoryLimitAndStartsOverWhenCleared() throws IOException {
+        long limit = 1L << 16;
+        OffHeapValueTable table = new OffHeapValueTable(16, limit, budget);
+        int added = 0;
+        while (!table.isFull()) {
+            table.add("value" + added++);
+        }
+        // the table stops growing, only the arena page of the last value may exceed the limit
+        assertTrue(table.bytesHeld() <= 2 * limit, () -> Long.toString(table.bytesHeld()));
+        table.clear();
+        assertFalse(table.isFull());
+        assertEquals(0, table.size());
+        assertTrue(table.bytesHeld() <= limit);
+
+        // the next run only contains the values added after clearing
+        table.add("value0");
+        table.add("other");
+        table.add("other");
+        Map<String, Long> expected = new LinkedHashMap<>();
+        expected.put("other", 2L);
+        expected.put("value0", 1L);
+        assertEquals(expected, write(table));
+        table.release();
+    }
+
+    private Map<String, Long> write(OffHeapValueTable table) throws IOException {
+        Path file = folder.resolve("run" + System.nanoTime());
+        table.write(new BinaryValueWriter(file));
+        Map<String, Long> written = new LinkedHashMap<>();
+        try (BinaryValueReader reader = new BinaryValueReader(file)) {
+            String value;
+            String previous = null;
+            while ((value = reader.readValue()) != null) {
+                written.put(value, reader.readOccurrences());
+                assertTrue(previous == null || compareBytes(previous, value) < 0, value);
+                previous = value;
+            }
+        }
+        return written;
+    }
+
+    private static int compareBytes(String a, String b) {
+        return Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,65 @@
+package spider.structures;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class RadixSorterTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 31, 32, 33, 1000, 50_000})
+    void sortsByUnsignedBytes(int count) {
+        Random random = new Random(count);
+        Set<String> distinct = new LinkedHashSet<>();
+        while (distinct.size() < count) {
+            // all byte values, including the ones above 0x7F and keys that are prefixes of others
+            byte[] key = new byte[random.nextInt(6)];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = (byte) (random.nextBoolean() ? random.nextInt(256) : 'a' + random.nextInt(3));
+            }
+            distinct.add(new String(key, StandardCharsets.ISO_8859_1));
+        }
+        assertSorted(distinct.stream().map(key -> key.getBytes(StandardCharsets.ISO_8859_1)).toArray(byte[][]::new));
+    }
+
+    @Test
+    void sortsKeysWithLongCommonPrefixes() {
+        // the keys only differ after 300 levels of buckets
+        byte[][] keys = new byte[2000][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new byte[300 + i % 10];
+            Arrays.fill(keys[i], (byte) 'x');
+            keys[i][keys[i].length - 1] = (byte) (i / 10);
+        }
+        assertSorted(keys);
+    }
+
+    private static void assertSorted(byte[][] keys) {
+        int[] order = IntStream.range(0, keys.length).toArray();
+        RadixSorter.sort(order, new RadixSorter.Keys() {
+            @Override
+            public int length(int key) {
+                return keys[key].length;
+            }
+
+            @Override
+            public int byteAt(int key, int depth) {
+                return keys[key][depth] & 0xFF;
+            }
+        });
+        byte[][] expected = keys.clone();
+        Arrays.sort(expected, (Comparator<byte[]>) Arrays::compareUnsigned);
+        byte[][] sorted = Arrays.stream(order).mapToObj(key -> keys[key]).toArray(byte[][]::new);
+        assertArrayEquals(expected, sorted);
+    }
+}